@@ -0,0 +1,284 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * Base class for thread safe, Spring managed, {@code SqlSession}s that route every
+ * statement to one of several {@code SqlSessionTemplate}s, i.e. one per database.
+ * <p>
+ * Subclasses decide where each statement goes in {@link #execute(String, Object, SqlSessionCallback)},
+ * based on its id and parameter. Calls that are not bound to a statement, like
+ * {@code getConnection()} or {@code flushStatements()}, go to the default template.
+ * Mappers obtained from {@code getMapper()} are bound to this session, so their
+ * statements are routed too.
+ * <p>
+ * Each target template keeps working as usual: sessions are bound to the Spring
+ * transaction per {@code SqlSessionFactory} and exceptions are translated by the
+ * target's own {@code PersistenceExceptionTranslator}.
+ *
+ * @see SqlSessionTemplate
+ * @since 1.2.0
+ * @version $Id$
+ */
+public abstract class AbstractRoutingSqlSessionTemplate implements SqlSession {
+
+  /**
+   * Returns the template used for calls not bound to a statement. Its
+   * {@code Configuration} is also the one used to build mappers.
+   */
+  protected abstract SqlSessionTemplate getDefaultSqlSessionTemplate();
+
+  /**
+   * Runs the action against the template the statement has to be routed to.
+   *
+   * @param statement the id of the statement about to be executed
+   * @param parameter the parameter object of the statement, may be null
+   * @param action the operation to run on the chosen template
+   * @return the result of the action
+   */
+  protected abstract <T> T execute(String statement, Object parameter, SqlSessionCallback<T> action);
+
+  /**
+   * {@inheritDoc}
+   */
+  public <T> T selectOne(String statement) {
+    return this.<T> selectOne(statement, null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <T> T selectOne(final String statement, final Object parameter) {
+    return execute(statement, parameter, new SqlSessionCallback<T>() {
+      public T doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<T> selectOne(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+    return this.<K, V> selectMap(statement, null, mapKey, RowBounds.DEFAULT);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+    return this.<K, V> selectMap(statement, parameter, mapKey, RowBounds.DEFAULT);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <K, V> Map<K, V> selectMap(final String statement, final Object parameter, final String mapKey,
+      final RowBounds rowBounds) {
+    return execute(statement, parameter, new SqlSessionCallback<Map<K, V>>() {
+      public Map<K, V> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <E> List<E> selectList(String statement) {
+    return this.<E> selectList(statement, null, RowBounds.DEFAULT);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <E> List<E> selectList(String statement, Object parameter) {
+    return this.<E> selectList(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <E> List<E> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+    return execute(statement, parameter, new SqlSessionCallback<List<E>>() {
+      public List<E> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<E> selectList(statement, parameter, rowBounds);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void select(String statement, ResultHandler handler) {
+    select(statement, null, RowBounds.DEFAULT, handler);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void select(String statement, Object parameter, ResultHandler handler) {
+    select(statement, parameter, RowBounds.DEFAULT, handler);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void select(final String statement, final Object parameter, final RowBounds rowBounds,
+      final ResultHandler handler) {
+    execute(statement, parameter, new SqlSessionCallback<Object>() {
+      public Object doInSqlSession(SqlSession sqlSession) {
+        sqlSession.select(statement, parameter, rowBounds, handler);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int insert(String statement) {
+    return insert(statement, null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int insert(final String statement, final Object parameter) {
+    return execute(statement, parameter, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.insert(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int update(String statement) {
+    return update(statement, null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int update(final String statement, final Object parameter) {
+    return execute(statement, parameter, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.update(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int delete(String statement) {
+    return delete(statement, null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int delete(final String statement, final Object parameter) {
+    return execute(statement, parameter, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.delete(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public <T> T getMapper(Class<T> type) {
+    return getConfiguration().getMapper(type, this);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void commit() {
+    throw new UnsupportedOperationException("Manual commit is not allowed over a Spring managed SqlSession");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void commit(boolean force) {
+    throw new UnsupportedOperationException("Manual commit is not allowed over a Spring managed SqlSession");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void rollback() {
+    throw new UnsupportedOperationException("Manual rollback is not allowed over a Spring managed SqlSession");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void rollback(boolean force) {
+    throw new UnsupportedOperationException("Manual rollback is not allowed over a Spring managed SqlSession");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void close() {
+    throw new UnsupportedOperationException("Manual close is not allowed over a Spring managed SqlSession");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void clearCache() {
+    getDefaultSqlSessionTemplate().clearCache();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Configuration getConfiguration() {
+    return getDefaultSqlSessionTemplate().getConfiguration();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Connection getConnection() {
+    return getDefaultSqlSessionTemplate().getConnection();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public List<BatchResult> flushStatements() {
+    return getDefaultSqlSessionTemplate().flushStatements();
+  }
+
+}
@@ -0,0 +1,291 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.util.Assert.notNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+
+/**
+ * Asynchronous companion of {@code SqlSessionTemplate}. Each operation is submitted
+ * to an {@code AsyncTaskExecutor} and a {@code Future} holding its result is
+ * returned right away, so the calling thread is not blocked by slow statements.
+ * <p>
+ * Operations are executed by an internal {@code SqlSessionTemplate} built with the
+ * same {@code SqlSessionFactory}, {@code ExecutorType} and
+ * {@code PersistenceExceptionTranslator}, so MyBatis exceptions are translated when
+ * the operation completes and reach the caller as the cause of the
+ * {@code ExecutionException} thrown by {@code Future.get()}.
+ * <p>
+ * Operations <b>never</b> participate in the caller's Spring transaction: each one runs
+ * on a pool thread in its own {@code SqlSession}, connection and local commit, just like
+ * a non transactional {@code SqlSessionTemplate} call. To enforce that rule an operation
+ * fails with an {@code IllegalStateException} if the task executor runs it on a thread
+ * with active transaction synchronization (i.e. a synchronous executor used inside a
+ * transaction).
+ * <p>
+ * The number of concurrent operations, and so of connections taken from the pool, is
+ * bounded by the task executor. A {@code ThreadPoolTaskExecutor} with a fixed pool size
+ * and queue capacity is the usual choice:
+ *
+ * <pre class="code">
+ * {@code
+ * <task:executor id="reportExecutor" pool-size="4" queue-capacity="100" />
+ *
+ * <bean id="asyncSqlSessionTemplate" class="org.mybatis.spring.AsyncSqlSessionTemplate">
+ *   <constructor-arg ref="sqlSessionFactory" />
+ *   <constructor-arg ref="reportExecutor" />
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @see SqlSessionTemplate
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class AsyncSqlSessionTemplate {
+
+  private final SqlSessionTemplate sqlSessionTemplate;
+
+  private final AsyncTaskExecutor taskExecutor;
+
+  /**
+   * Constructs an asynchronous template with the {@code SqlSessionFactory} and the
+   * {@code AsyncTaskExecutor} provided as arguments.
+   *
+   * @param sqlSessionFactory
+   * @param taskExecutor
+   */
+  public AsyncSqlSessionTemplate(SqlSessionFactory sqlSessionFactory, AsyncTaskExecutor taskExecutor) {
+    this(new SqlSessionTemplate(sqlSessionFactory), taskExecutor);
+  }
+
+  /**
+   * Constructs an asynchronous template with the given {@code SqlSessionFactory},
+   * {@code ExecutorType} and {@code AsyncTaskExecutor}.
+   *
+   * @param sqlSessionFactory
+   * @param executorType
+   * @param taskExecutor
+   */
+  public AsyncSqlSessionTemplate(SqlSessionFactory sqlSessionFactory, ExecutorType executorType,
+      AsyncTaskExecutor taskExecutor) {
+    this(new SqlSessionTemplate(sqlSessionFactory, executorType), taskExecutor);
+  }
+
+  /**
+   * Constructs an asynchronous template with the given {@code SqlSessionFactory},
+   * {@code ExecutorType}, {@code PersistenceExceptionTranslator} and
+   * {@code AsyncTaskExecutor}.
+   *
+   * @param sqlSessionFactory
+   * @param executorType
+   * @param exceptionTranslator
+   * @param taskExecutor
+   */
+  public AsyncSqlSessionTemplate(SqlSessionFactory sqlSessionFactory, ExecutorType executorType,
+      PersistenceExceptionTranslator exceptionTranslator, AsyncTaskExecutor taskExecutor) {
+    this(new SqlSessionTemplate(sqlSessionFactory, executorType, exceptionTranslator), taskExecutor);
+  }
+
+  /**
+   * Constructs an asynchronous template that runs its operations through the given
+   * {@code SqlSessionTemplate}.
+   *
+   * @param sqlSessionTemplate
+   * @param taskExecutor
+   */
+  public AsyncSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate, AsyncTaskExecutor taskExecutor) {
+    notNull(sqlSessionTemplate, "Property 'sqlSessionTemplate' is required");
+    notNull(taskExecutor, "Property 'taskExecutor' is required");
+
+    this.sqlSessionTemplate = sqlSessionTemplate;
+    this.taskExecutor = taskExecutor;
+  }
+
+  public SqlSessionTemplate getSqlSessionTemplate() {
+    return this.sqlSessionTemplate;
+  }
+
+  public AsyncTaskExecutor getTaskExecutor() {
+    return this.taskExecutor;
+  }
+
+  /**
+   * Submits the given callback to be executed through the internal
+   * {@code SqlSessionTemplate}.
+   *
+   * @param action callback object that specifies the MyBatis action
+   * @return a {@code Future} holding the result of the action
+   * @see SqlSessionTemplate#execute(SqlSessionCallback)
+   */
+  public <T> Future<T> execute(final SqlSessionCallback<T> action) {
+    notNull(action, "Callback object must not be null");
+
+    return submit(new Callable<T>() {
+      public T call() {
+        return AsyncSqlSessionTemplate.this.sqlSessionTemplate.execute(action);
+      }
+    });
+  }
+
+  /**
+   * @see SqlSession#selectOne(String)
+   */
+  public <T> Future<T> selectOne(String statement) {
+    return selectOne(statement, null);
+  }
+
+  /**
+   * @see SqlSession#selectOne(String, Object)
+   */
+  public <T> Future<T> selectOne(final String statement, final Object parameter) {
+    return submit(new Callable<T>() {
+      public T call() {
+        return AsyncSqlSessionTemplate.this.sqlSessionTemplate.selectOne(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * @see SqlSession#selectList(String)
+   */
+  public <E> Future<List<E>> selectList(String statement) {
+    return selectList(statement, null);
+  }
+
+  /**
+   * @see SqlSession#selectList(String, Object)
+   */
+  public <E> Future<List<E>> selectList(String statement, Object parameter) {
+    return selectList(statement, parameter, RowBounds.DEFAULT);
+  }
+
+  /**
+   * @see SqlSession#selectList(String, Object, RowBounds)
+   */
+  public <E> Future<List<E>> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+    return submit(new Callable<List<E>>() {
+      public List<E> call() {
+        return AsyncSqlSessionTemplate.this.sqlSessionTemplate.selectList(statement, parameter, rowBounds);
+      }
+    });
+  }
+
+  /**
+   * @see SqlSession#selectMap(String, String)
+   */
+  public <K, V> Future<Map<K, V>> selectMap(String statement, String mapKey) {
+    return selectMap(statement, null, mapKey);
+  }
+
+  /**
+   * @see SqlSession#selectMap(String, Object, String)
+   */
+  public <K, V> Future<Map<K, V>> selectMap(String statement, Object parameter, String mapKey) {
+    return selectMap(statement, parameter, mapKey, RowBounds.DEFAULT);
+  }
+
+  /**
+   * @see SqlSession#selectMap(String, Object, String, RowBounds)
+   */
+  public <K, V> Future<Map<K, V>> selectMap(final String statement, final Object parameter, final String mapKey,
+      final RowBounds rowBounds) {
+    return submit(new Callable<Map<K, V>>() {
+      public Map<K, V> call() {
+        return AsyncSqlSessionTemplate.this.sqlSessionTemplate.selectMap(statement, parameter, mapKey, rowBounds);
+      }
+    });
+  }
+
+  /**
+   * @see SqlSession#insert(String)
+   */
+  public Future<Integer> insert(String statement) {
+    return insert(statement, null);
+  }
+
+  /**
+   * @see SqlSession#insert(String, Object)
+   */
+  public Future<Integer> insert(final String statement, final Object parameter) {
+    return submit(new Callable<Integer>() {
+      public Integer call() {
+        return AsyncSqlSessionTemplate.this.sqlSessionTemplate.insert(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * @see SqlSession#update(String)
+   */
+  public Future<Integer> update(String statement) {
+    return update(statement, null);
+  }
+
+  /**
+   * @see SqlSession#update(String, Object)
+   */
+  public Future<Integer> update(final String statement, final Object parameter) {
+    return submit(new Callable<Integer>() {
+      public Integer call() {
+        return AsyncSqlSessionTemplate.this.sqlSessionTemplate.update(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * @see SqlSession#delete(String)
+   */
+  public Future<Integer> delete(String statement) {
+    return delete(statement, null);
+  }
+
+  /**
+   * @see SqlSession#delete(String, Object)
+   */
+  public Future<Integer> delete(final String statement, final Object parameter) {
+    return submit(new Callable<Integer>() {
+      public Integer call() {
+        return AsyncSqlSessionTemplate.this.sqlSessionTemplate.delete(statement, parameter);
+      }
+    });
+  }
+
+  private <T> Future<T> submit(final Callable<T> task) {
+    return this.taskExecutor.submit(new Callable<T>() {
+      public T call() throws Exception {
+        if (isSynchronizationActive()) {
+          throw new IllegalStateException("Asynchronous MyBatis operations cannot take part in a Spring transaction."
+              + " Use a task executor that runs them on threads of its own");
+        }
+        return task.call();
+      }
+    });
+  }
+
+}
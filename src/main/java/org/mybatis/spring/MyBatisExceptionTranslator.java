@@ -32,6 +32,8 @@ import org.springframework.jdbc.support.SQLExceptionTranslator;
  * {@code DataAccessException} using Spring's {@code SQLExceptionTranslator}
  * Can load {@code SQLExceptionTranslator} eagerly of when the
  * first exception is translated.
+ * <p>
+ * Once loaded, translation takes no lock.
  *
  * @version $Id$
  */
@@ -39,7 +41,7 @@ public class MyBatisExceptionTranslator implements PersistenceExceptionTranslato
 
   private final DataSource dataSource;
 
-  private SQLExceptionTranslator exceptionTranslator;
+  private volatile SQLExceptionTranslator exceptionTranslator;
 
   /**
    * Creates a new {@code DataAccessExceptionTranslator} instance.
@@ -67,8 +69,7 @@ public class MyBatisExceptionTranslator implements PersistenceExceptionTranslato
         e = (PersistenceException) e.getCause();
       }
       if (e.getCause() instanceof SQLException) {
-        this.initExceptionTranslator();
-        return this.exceptionTranslator.translate(e.getMessage() + "\n", null, (SQLException) e.getCause());
+        return translate(e.getMessage() + "\n", (SQLException) e.getCause());
       }
       return new MyBatisSystemException(e);
     } else {
@@ -76,13 +77,22 @@ public class MyBatisExceptionTranslator implements PersistenceExceptionTranslato
     }
   }
 
+  private DataAccessException translate(String task, SQLException sqlException) {
+    SQLExceptionTranslator translator = this.exceptionTranslator;
+    if (translator == null) {
+      translator = this.initExceptionTranslator();
+    }
+    return translator.translate(task, null, sqlException);
+  }
+
   /**
    * Initializes the internal translator reference.
    */
-  private synchronized void initExceptionTranslator() {
+  private synchronized SQLExceptionTranslator initExceptionTranslator() {
     if (this.exceptionTranslator == null) {
       this.exceptionTranslator = new SQLErrorCodeSQLExceptionTranslator(this.dataSource);
     }
+    return this.exceptionTranslator;
   }
 
 }
@@ -0,0 +1,237 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * Runs a set of independent select statements concurrently, each one in its own
+ * {@code SqlSession} and connection, and returns all their results.
+ * <p>
+ * Statements are executed through a {@code SqlSessionTemplate}, so their exceptions are
+ * translated as usual. At most {@code parallelism} statements run at the same time: the
+ * calling thread executes statements itself and up to {@code parallelism - 1} helper
+ * tasks are handed to the {@code TaskExecutor}. If any statement fails the pending ones
+ * are skipped and the first exception is rethrown once the running ones complete.
+ * <p>
+ * A connection cannot be shared between threads within a Spring transaction, so when
+ * transaction synchronization is active on the calling thread all statements are run
+ * sequentially on it instead, taking part in the transaction.
+ *
+ * <pre class="code">
+ * {@code
+ * List<List<?>> results = parallelQueryExecutor.selectLists(
+ *     new ParallelQueryExecutor.Query("selectOrders", customerId),
+ *     new ParallelQueryExecutor.Query("selectInvoices", customerId));
+ * }
+ * </pre>
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class ParallelQueryExecutor {
+
+  private static final Log logger = LogFactory.getLog(ParallelQueryExecutor.class);
+
+  private final SqlSessionTemplate sqlSessionTemplate;
+
+  private final TaskExecutor taskExecutor;
+
+  private int parallelism = 4;
+
+  public ParallelQueryExecutor(SqlSessionTemplate sqlSessionTemplate, TaskExecutor taskExecutor) {
+    notNull(sqlSessionTemplate, "Property 'sqlSessionTemplate' is required");
+    notNull(taskExecutor, "Property 'taskExecutor' is required");
+
+    this.sqlSessionTemplate = sqlSessionTemplate;
+    this.taskExecutor = taskExecutor;
+  }
+
+  /**
+   * Sets the maximum number of statements, and so of connections, used at the same
+   * time by a single call. Defaults to 4.
+   *
+   * @param parallelism the maximum number of concurrent statements
+   */
+  public void setParallelism(int parallelism) {
+    isTrue(parallelism > 0, "Property 'parallelism' must be greater than zero");
+    this.parallelism = parallelism;
+  }
+
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * @see #selectLists(List)
+   */
+  public List<List<?>> selectLists(Query... queries) {
+    return selectLists(Arrays.asList(queries));
+  }
+
+  /**
+   * Executes the given queries with {@code selectList} and returns their results in the
+   * same order.
+   *
+   * @param queries the statements to run with their parameters
+   * @return the list of results of each query
+   * @throws org.springframework.dao.DataAccessException the first translated failure
+   */
+  public List<List<?>> selectLists(List<Query> queries) {
+    notNull(queries, "Parameter 'queries' is required");
+
+    final Query[] pending = queries.toArray(new Query[queries.size()]);
+    final List<?>[] results = new List<?>[pending.length];
+
+    if (isSynchronizationActive() || this.parallelism == 1 || pending.length < 2) {
+      if (logger.isDebugEnabled() && isSynchronizationActive()) {
+        logger.debug("Transaction synchronization is active, running " + pending.length + " queries sequentially");
+      }
+      for (int i = 0; i < pending.length; i++) {
+        results[i] = this.sqlSessionTemplate.selectList(pending[i].getStatement(), pending[i].getParameter());
+      }
+      return Arrays.asList(results);
+    }
+
+    final Execution execution = new Execution(pending, results);
+    int helpers = Math.min(this.parallelism, pending.length) - 1;
+    for (int i = 0; i < helpers; i++) {
+      try {
+        this.taskExecutor.execute(new Runnable() {
+          public void run() {
+            try {
+              execution.run();
+            } finally {
+              ParallelQueryExecutor.this.sqlSessionTemplate.releaseThreadSession();
+            }
+          }
+        });
+      } catch (TaskRejectedException e) {
+        // the calling thread will run the remaining queries
+        if (logger.isDebugEnabled()) {
+          logger.debug("Task executor rejected a parallel query task: " + e.getMessage());
+        }
+        break;
+      }
+    }
+    execution.run();
+    execution.await();
+
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Shared state of one {@code selectLists} call. Each participating thread takes the
+   * next pending query until there is none left or one of them failed.
+   */
+  private final class Execution {
+
+    private final Query[] queries;
+
+    private final List<?>[] results;
+
+    private final AtomicInteger nextQuery = new AtomicInteger();
+
+    private final CountDownLatch completed;
+
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+    private Execution(Query[] queries, List<?>[] results) {
+      this.queries = queries;
+      this.results = results;
+      this.completed = new CountDownLatch(queries.length);
+    }
+
+    private void run() {
+      int i;
+      while ((i = this.nextQuery.getAndIncrement()) < this.queries.length) {
+        try {
+          if (this.failure.get() == null) {
+            this.results[i] = ParallelQueryExecutor.this.sqlSessionTemplate.selectList(
+                this.queries[i].getStatement(), this.queries[i].getParameter());
+          }
+        } catch (RuntimeException e) {
+          // only the first failure is reported
+          this.failure.compareAndSet(null, e);
+        } finally {
+          this.completed.countDown();
+        }
+      }
+    }
+
+    private void await() {
+      try {
+        this.completed.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.failure.compareAndSet(null, new MyBatisSystemException(e));
+      }
+      RuntimeException firstFailure = this.failure.get();
+      if (firstFailure != null) {
+        throw firstFailure;
+      }
+    }
+
+  }
+
+  /**
+   * A statement id with the parameter it has to be executed with.
+   */
+  public static class Query {
+
+    private final String statement;
+
+    private final Object parameter;
+
+    public Query(String statement) {
+      this(statement, null);
+    }
+
+    public Query(String statement, Object parameter) {
+      notNull(statement, "Parameter 'statement' is required");
+      this.statement = statement;
+      this.parameter = parameter;
+    }
+
+    public String getStatement() {
+      return this.statement;
+    }
+
+    public Object getParameter() {
+      return this.parameter;
+    }
+
+    @Override
+    public String toString() {
+      return this.statement + "(" + this.parameter + ")";
+    }
+
+  }
+
+}
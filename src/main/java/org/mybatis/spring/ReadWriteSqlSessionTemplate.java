@@ -0,0 +1,264 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.springframework.transaction.support.TransactionSynchronizationManager.getResource;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isActualTransactionActive;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isCurrentTransactionReadOnly;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization;
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+
+/**
+ * Thread safe, Spring managed, {@code SqlSession} that splits reads and writes between
+ * a primary database and its read replicas.
+ * <p>
+ * Statements whose {@code MappedStatement} is a {@code SELECT} are sent to one of the
+ * replicas, chosen in a round robin fashion or by the least number of outstanding calls.
+ * Everything else goes to the primary. Selects stay on the primary too when:
+ * <ul>
+ * <li>a read-write Spring transaction is active, so the whole transaction uses a single
+ * connection and reads see its own changes,</li>
+ * <li>the primary {@code SqlSession} is already bound to the current transaction
+ * synchronization,</li>
+ * <li>the current thread wrote to the primary less than {@code readYourWritesWindow}
+ * milliseconds ago (counted from the transaction commit for transactional writes), so
+ * it does not read stale data from a lagging replica.</li>
+ * </ul>
+ * Every database has its own {@code SqlSessionTemplate}, so all of them must share the
+ * same mapped statements. The transaction manager is expected to manage the primary
+ * {@code DataSource}; replica reads are non transactional.
+ *
+ * <pre class="code">
+ * {@code
+ * <bean id="sqlSession" class="org.mybatis.spring.ReadWriteSqlSessionTemplate">
+ *   <constructor-arg ref="primarySqlSessionFactory" />
+ *   <constructor-arg>
+ *     <list>
+ *       <ref bean="replica1SqlSessionFactory" />
+ *       <ref bean="replica2SqlSessionFactory" />
+ *     </list>
+ *   </constructor-arg>
+ *   <property name="readYourWritesWindow" value="2000" />
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class ReadWriteSqlSessionTemplate extends AbstractRoutingSqlSessionTemplate {
+
+  /**
+   * How a replica is chosen for each read.
+   */
+  public enum ReplicaSelection {
+    /** Each read goes to the next replica. */
+    ROUND_ROBIN,
+    /** Each read goes to the replica with the fewest calls in progress. */
+    LEAST_OUTSTANDING
+  }
+
+  private static final Log logger = LogFactory.getLog(ReadWriteSqlSessionTemplate.class);
+
+  private static final long WRITE_PENDING_COMMIT = Long.MAX_VALUE;
+
+  private final SqlSessionTemplate primary;
+
+  private final SqlSessionTemplate[] replicas;
+
+  private final AtomicInteger[] outstanding;
+
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  private final ThreadLocal<Long> lastWrite = new ThreadLocal<Long>();
+
+  private ReplicaSelection replicaSelection = ReplicaSelection.ROUND_ROBIN;
+
+  private long readYourWritesWindow;
+
+  /**
+   * Creates a template that routes statements to templates built from the given factories.
+   *
+   * @param primarySqlSessionFactory factory of the database that gets all the writes
+   * @param replicaSqlSessionFactories factories of the read replicas
+   */
+  public ReadWriteSqlSessionTemplate(SqlSessionFactory primarySqlSessionFactory,
+      List<SqlSessionFactory> replicaSqlSessionFactories) {
+    this(new SqlSessionTemplate(primarySqlSessionFactory), toTemplates(replicaSqlSessionFactories));
+  }
+
+  /**
+   * Creates a template that routes statements to the given templates.
+   *
+   * @param primary template of the database that gets all the writes
+   * @param replicas templates of the read replicas
+   */
+  public ReadWriteSqlSessionTemplate(SqlSessionTemplate primary, List<SqlSessionTemplate> replicas) {
+    notNull(primary, "Property 'primary' is required");
+    notNull(replicas, "Property 'replicas' is required");
+
+    this.primary = primary;
+    this.replicas = replicas.toArray(new SqlSessionTemplate[replicas.size()]);
+    this.outstanding = new AtomicInteger[this.replicas.length];
+    for (int i = 0; i < this.outstanding.length; i++) {
+      this.outstanding[i] = new AtomicInteger();
+    }
+  }
+
+  private static List<SqlSessionTemplate> toTemplates(List<SqlSessionFactory> sqlSessionFactories) {
+    notNull(sqlSessionFactories, "Property 'replicaSqlSessionFactories' is required");
+    List<SqlSessionTemplate> templates = new ArrayList<SqlSessionTemplate>(sqlSessionFactories.size());
+    for (SqlSessionFactory sqlSessionFactory : sqlSessionFactories) {
+      templates.add(new SqlSessionTemplate(sqlSessionFactory));
+    }
+    return templates;
+  }
+
+  /**
+   * Sets how replicas are chosen. Defaults to {@code ROUND_ROBIN}.
+   *
+   * @param replicaSelection the replica selection strategy
+   */
+  public void setReplicaSelection(ReplicaSelection replicaSelection) {
+    notNull(replicaSelection, "Property 'replicaSelection' is required");
+    this.replicaSelection = replicaSelection;
+  }
+
+  /**
+   * Sets for how long, in milliseconds, reads issued by a thread after it wrote to the
+   * primary keep going to the primary. Defaults to 0, reads are never sticky.
+   *
+   * @param readYourWritesWindow the stickiness window in milliseconds
+   */
+  public void setReadYourWritesWindow(long readYourWritesWindow) {
+    isTrue(readYourWritesWindow >= 0, "Property 'readYourWritesWindow' must not be negative");
+    this.readYourWritesWindow = readYourWritesWindow;
+  }
+
+  public SqlSessionTemplate getPrimary() {
+    return this.primary;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected SqlSessionTemplate getDefaultSqlSessionTemplate() {
+    return this.primary;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected <T> T execute(String statement, Object parameter, SqlSessionCallback<T> action) {
+    if (!this.primary.isSelect(statement)) {
+      markWrite();
+      return action.doInSqlSession(this.primary);
+    }
+    if (this.replicas.length == 0 || isPrimaryRequired()) {
+      return action.doInSqlSession(this.primary);
+    }
+
+    int replica = chooseReplica();
+    if (logger.isDebugEnabled()) {
+      logger.debug("Routing statement [" + statement + "] to replica " + replica);
+    }
+    this.outstanding[replica].incrementAndGet();
+    try {
+      return action.doInSqlSession(this.replicas[replica]);
+    } finally {
+      this.outstanding[replica].decrementAndGet();
+    }
+  }
+
+  private boolean isPrimaryRequired() {
+    if (isActualTransactionActive() && !isCurrentTransactionReadOnly()) {
+      return true;
+    }
+    if (getResource(this.primary.getSqlSessionFactory()) != null) {
+      return true;
+    }
+    Long lastWriteTime = this.lastWrite.get();
+    if (lastWriteTime != null) {
+      if (lastWriteTime == WRITE_PENDING_COMMIT
+          || System.currentTimeMillis() - lastWriteTime < this.readYourWritesWindow) {
+        return true;
+      }
+      this.lastWrite.remove();
+    }
+    return false;
+  }
+
+  private void markWrite() {
+    if (this.readYourWritesWindow == 0) {
+      return;
+    }
+    if (isSynchronizationActive()) {
+      // the window starts when the changes are visible to others
+      final Long previousWrite = this.lastWrite.get();
+      if (previousWrite == null || previousWrite != WRITE_PENDING_COMMIT) {
+        this.lastWrite.set(WRITE_PENDING_COMMIT);
+        registerSynchronization(new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+              ReadWriteSqlSessionTemplate.this.lastWrite.set(System.currentTimeMillis());
+            } else if (previousWrite != null) {
+              // rolled back changes are not visible anywhere, the window of earlier writes still applies
+              ReadWriteSqlSessionTemplate.this.lastWrite.set(previousWrite);
+            } else {
+              ReadWriteSqlSessionTemplate.this.lastWrite.remove();
+            }
+          }
+        });
+      }
+    } else {
+      this.lastWrite.set(System.currentTimeMillis());
+    }
+  }
+
+  private int chooseReplica() {
+    if (this.replicaSelection == ReplicaSelection.LEAST_OUTSTANDING) {
+      int chosen = 0;
+      int fewest = Integer.MAX_VALUE;
+      // start at a rotating offset so ties are spread among replicas
+      int offset = this.nextReplica.getAndIncrement() & Integer.MAX_VALUE;
+      for (int i = 0; i < this.replicas.length; i++) {
+        int candidate = (offset + i) % this.replicas.length;
+        int calls = this.outstanding[candidate].get();
+        if (calls < fewest) {
+          fewest = calls;
+          chosen = candidate;
+        }
+      }
+      return chosen;
+    }
+    return (this.nextReplica.getAndIncrement() & Integer.MAX_VALUE) % this.replicas.length;
+  }
+
+}
@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+/**
+ * Strategy used by {@code ShardedSqlSessionTemplate} to find out which shard a
+ * statement has to be executed on.
+ *
+ * @see ShardedSqlSessionTemplate
+ * @since 1.2.0
+ * @version $Id$
+ */
+public interface ShardKeyExtractor {
+
+  /**
+   * Returns the shard key of a statement call, usually a property of its parameter.
+   *
+   * @param statement the id of the statement about to be executed
+   * @param parameter the parameter object of the statement, may be null
+   * @return the shard key or null if the statement is not bound to a shard
+   */
+  Object getShardKey(String statement, Object parameter);
+
+}
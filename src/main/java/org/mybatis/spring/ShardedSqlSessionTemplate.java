@@ -0,0 +1,393 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.util.Assert.notEmpty;
+import static org.springframework.util.Assert.notNull;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.ibatis.exceptions.TooManyResultsException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * Thread safe, Spring managed, {@code SqlSession} that spreads statements over several
+ * hash sharded databases, each one with its own {@code SqlSessionFactory}.
+ * <p>
+ * The shard of each call is picked from the shard key returned by the configured
+ * {@code ShardKeyExtractor}, by default using {@code hashCode() % shards}. Selects
+ * without a shard key are scattered to all shards and their results gathered:
+ * {@code selectList} and {@code selectMap} results are merged in shard order, and
+ * {@code selectOne} fails if more than one shard returns a row. Writes without a shard
+ * key are rejected.
+ * <p>
+ * Each shard has its own {@code SqlSessionTemplate}, so sessions are bound to the Spring
+ * transaction synchronization per shard {@code SqlSessionFactory} and every shard
+ * takes part in the transaction of its own {@code DataSource}. Scattered selects run
+ * in parallel on a {@code TaskExecutor}, but sequentially on the calling thread when
+ * transaction synchronization is active so they see the shard transactions.
+ * {@code flushStatements()} and {@code clearCache()} apply to every shard, while
+ * {@code getConnection()} is not supported because no single connection stands for
+ * all of them.
+ *
+ * <pre class="code">
+ * {@code
+ * <bean id="sqlSession" class="org.mybatis.spring.ShardedSqlSessionTemplate">
+ *   <constructor-arg>
+ *     <list>
+ *       <ref bean="shard0SqlSessionFactory" />
+ *       <ref bean="shard1SqlSessionFactory" />
+ *     </list>
+ *   </constructor-arg>
+ *   <constructor-arg ref="customerIdExtractor" />
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @see ShardKeyExtractor
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class ShardedSqlSessionTemplate extends AbstractRoutingSqlSessionTemplate {
+
+  private static final Log logger = LogFactory.getLog(ShardedSqlSessionTemplate.class);
+
+  private final SqlSessionTemplate[] shards;
+
+  private final ShardKeyExtractor shardKeyExtractor;
+
+  private TaskExecutor taskExecutor;
+
+  /**
+   * Creates a template that routes statements to templates built from the given factories.
+   *
+   * @param sqlSessionFactories factories of each shard, in shard index order
+   * @param shardKeyExtractor extractor of the shard key of each call
+   */
+  public ShardedSqlSessionTemplate(List<SqlSessionFactory> sqlSessionFactories, ShardKeyExtractor shardKeyExtractor) {
+    this(toTemplates(sqlSessionFactories), shardKeyExtractor);
+  }
+
+  /**
+   * Creates a template that routes statements to the given templates.
+   *
+   * @param shards templates of each shard, in shard index order
+   * @param shardKeyExtractor extractor of the shard key of each call
+   */
+  public ShardedSqlSessionTemplate(SqlSessionTemplate[] shards, ShardKeyExtractor shardKeyExtractor) {
+    notEmpty(shards, "Property 'shards' is required");
+    notNull(shardKeyExtractor, "Property 'shardKeyExtractor' is required");
+
+    this.shards = shards.clone();
+    this.shardKeyExtractor = shardKeyExtractor;
+
+    SimpleAsyncTaskExecutor defaultTaskExecutor = new SimpleAsyncTaskExecutor("mybatis-shard-");
+    defaultTaskExecutor.setDaemon(true);
+    this.taskExecutor = defaultTaskExecutor;
+  }
+
+  private static SqlSessionTemplate[] toTemplates(List<SqlSessionFactory> sqlSessionFactories) {
+    notEmpty(sqlSessionFactories, "Property 'sqlSessionFactories' is required");
+    SqlSessionTemplate[] templates = new SqlSessionTemplate[sqlSessionFactories.size()];
+    for (int i = 0; i < templates.length; i++) {
+      templates[i] = new SqlSessionTemplate(sqlSessionFactories.get(i));
+    }
+    return templates;
+  }
+
+  /**
+   * Sets the executor that runs scattered selects on the shards other than the first
+   * one, which runs on the calling thread. Defaults to a {@code SimpleAsyncTaskExecutor}
+   * creating daemon threads.
+   *
+   * @param taskExecutor the executor of scattered selects
+   */
+  public void setTaskExecutor(TaskExecutor taskExecutor) {
+    notNull(taskExecutor, "Property 'taskExecutor' is required");
+    this.taskExecutor = taskExecutor;
+  }
+
+  public List<SqlSessionTemplate> getShards() {
+    return Arrays.asList(this.shards);
+  }
+
+  /**
+   * Returns the index of the shard of the given key. Override to use a sharding
+   * function other than {@code hashCode() % shards}.
+   *
+   * @param shardKey a not null shard key
+   * @param shardCount the number of shards
+   * @return the index of the shard, between 0 and {@code shardCount - 1}
+   */
+  protected int getShardIndex(Object shardKey, int shardCount) {
+    return (shardKey.hashCode() & Integer.MAX_VALUE) % shardCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected SqlSessionTemplate getDefaultSqlSessionTemplate() {
+    return this.shards[0];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected <T> T execute(String statement, Object parameter, SqlSessionCallback<T> action) {
+    SqlSessionTemplate shard = getShard(statement, parameter);
+    if (shard == null) {
+      throw new IllegalArgumentException("No shard key found for statement [" + statement + "]");
+    }
+    return action.doInSqlSession(shard);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T> T selectOne(final String statement, final Object parameter) {
+    SqlSessionTemplate shard = getShard(statement, parameter);
+    if (shard != null) {
+      return shard.<T> selectOne(statement, parameter);
+    }
+
+    List<T> results = scatter(new SqlSessionCallback<T>() {
+      public T doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<T> selectOne(statement, parameter);
+      }
+    });
+    T result = null;
+    for (T shardResult : results) {
+      if (shardResult != null) {
+        if (result != null) {
+          throw getDefaultSqlSessionTemplate().translateExceptionIfPossible(new TooManyResultsException(
+              "Expected one result (or null) to be returned by selectOne(), but found rows in several shards"));
+        }
+        result = shardResult;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * When scattered, the row bounds are applied to the merged result.
+   */
+  @Override
+  public <E> List<E> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+    SqlSessionTemplate shard = getShard(statement, parameter);
+    if (shard != null) {
+      return shard.<E> selectList(statement, parameter, rowBounds);
+    }
+
+    final RowBounds shardRowBounds = shardRowBounds(rowBounds);
+    List<List<E>> results = scatter(new SqlSessionCallback<List<E>>() {
+      public List<E> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<E> selectList(statement, parameter, shardRowBounds);
+      }
+    });
+    List<E> merged = new ArrayList<E>();
+    for (List<E> shardResult : results) {
+      merged.addAll(shardResult);
+    }
+    if (rowBounds.getOffset() == RowBounds.NO_ROW_OFFSET && rowBounds.getLimit() == RowBounds.NO_ROW_LIMIT) {
+      return merged;
+    }
+    int from = Math.min(rowBounds.getOffset(), merged.size());
+    int to = (int) Math.min((long) from + rowBounds.getLimit(), merged.size());
+    return new ArrayList<E>(merged.subList(from, to));
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * When scattered, the row bounds are applied to each shard.
+   */
+  @Override
+  public <K, V> Map<K, V> selectMap(final String statement, final Object parameter, final String mapKey,
+      final RowBounds rowBounds) {
+    SqlSessionTemplate shard = getShard(statement, parameter);
+    if (shard != null) {
+      return shard.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+    }
+
+    List<Map<K, V>> results = scatter(new SqlSessionCallback<Map<K, V>>() {
+      public Map<K, V> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+      }
+    });
+    Map<K, V> merged = new HashMap<K, V>();
+    for (Map<K, V> shardResult : results) {
+      merged.putAll(shardResult);
+    }
+    return merged;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * When scattered, shards are read one after another so the handler is never called
+   * concurrently. The row bounds are applied to each shard.
+   */
+  @Override
+  public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+    SqlSessionTemplate shard = getShard(statement, parameter);
+    if (shard != null) {
+      shard.select(statement, parameter, rowBounds, handler);
+      return;
+    }
+
+    for (SqlSessionTemplate each : this.shards) {
+      each.select(statement, parameter, rowBounds, handler);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Flushes every shard and returns their results in shard order.
+   */
+  @Override
+  public List<BatchResult> flushStatements() {
+    List<BatchResult> batchResults = new ArrayList<BatchResult>();
+    for (SqlSessionTemplate shard : this.shards) {
+      batchResults.addAll(shard.flushStatements());
+    }
+    return batchResults;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Clears the session cache of every shard.
+   */
+  @Override
+  public void clearCache() {
+    for (SqlSessionTemplate shard : this.shards) {
+      shard.clearCache();
+    }
+  }
+
+  /**
+   * Sharded sessions have one connection per shard.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public Connection getConnection() {
+    throw new UnsupportedOperationException("A sharded SqlSession has no single connection, use the shard templates");
+  }
+
+  private SqlSessionTemplate getShard(String statement, Object parameter) {
+    Object shardKey = this.shardKeyExtractor.getShardKey(statement, parameter);
+    if (shardKey == null) {
+      return null;
+    }
+    int index = getShardIndex(shardKey, this.shards.length);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Routing statement [" + statement + "] with shard key [" + shardKey + "] to shard " + index);
+    }
+    return this.shards[index];
+  }
+
+  private static RowBounds shardRowBounds(RowBounds rowBounds) {
+    if (rowBounds.getLimit() == RowBounds.NO_ROW_LIMIT) {
+      return RowBounds.DEFAULT;
+    }
+    // every shard may hold all the rows of the requested page
+    long limit = (long) rowBounds.getOffset() + rowBounds.getLimit();
+    return new RowBounds(RowBounds.NO_ROW_OFFSET, (int) Math.min(limit, RowBounds.NO_ROW_LIMIT));
+  }
+
+  /**
+   * Runs the action on every shard and returns their results in shard order.
+   */
+  private <T> List<T> scatter(final SqlSessionCallback<T> action) {
+    final List<T> results = new ArrayList<T>(this.shards.length);
+    if (isSynchronizationActive() || this.shards.length == 1) {
+      for (SqlSessionTemplate shard : this.shards) {
+        results.add(action.doInSqlSession(shard));
+      }
+      return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    final T[] shardResults = (T[]) new Object[this.shards.length];
+    final RuntimeException[] failures = new RuntimeException[this.shards.length];
+    final CountDownLatch completed = new CountDownLatch(this.shards.length - 1);
+    for (int i = 1; i < this.shards.length; i++) {
+      final int index = i;
+      Runnable task = new Runnable() {
+        public void run() {
+          try {
+            shardResults[index] = action.doInSqlSession(ShardedSqlSessionTemplate.this.shards[index]);
+          } catch (RuntimeException e) {
+            failures[index] = e;
+          } finally {
+            ShardedSqlSessionTemplate.this.shards[index].releaseThreadSession();
+            completed.countDown();
+          }
+        }
+      };
+      try {
+        this.taskExecutor.execute(task);
+      } catch (TaskRejectedException e) {
+        // run it on the calling thread instead
+        task.run();
+      }
+    }
+
+    try {
+      shardResults[0] = action.doInSqlSession(this.shards[0]);
+    } catch (RuntimeException e) {
+      failures[0] = e;
+    }
+
+    try {
+      completed.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MyBatisSystemException(e);
+    }
+    for (RuntimeException failure : failures) {
+      if (failure != null) {
+        throw failure;
+      }
+    }
+    results.addAll(Arrays.asList(shardResults));
+    return results;
+  }
+
+}
@@ -0,0 +1,44 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * Callback interface for code that operates on a MyBatis {@code SqlSession}.
+ * Used by {@code SqlSessionTemplate}'s {@code execute} method.
+ * <p>
+ * Implementations do not need to care about acquiring, committing or closing
+ * the {@code SqlSession}, nor about exception translation: the template
+ * handles all of that exactly as it does for its own {@code SqlSession} methods.
+ *
+ * @see SqlSessionTemplate#execute(SqlSessionCallback)
+ * @since 1.2.0
+ * @version $Id$
+ */
+public interface SqlSessionCallback<T> {
+
+  /**
+   * Gets called by {@code SqlSessionTemplate.execute} with the {@code SqlSession}
+   * resolved for the current thread, either the one bound to the current Spring
+   * transaction or a new one.
+   *
+   * @param sqlSession the resolved MyBatis {@code SqlSession}
+   * @return a result object, or {@code null} if none
+   */
+  T doInSqlSession(SqlSession sqlSession);
+
+}
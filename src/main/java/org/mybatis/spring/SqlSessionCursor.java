@@ -0,0 +1,338 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.mybatis.spring.SqlSessionUtils.closeSqlSession;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+
+/**
+ * Pull based cursor over the results of a MyBatis select statement, opened with
+ * {@code SqlSessionTemplate.selectCursor}.
+ * <p>
+ * The cursor owns a dedicated {@code SqlSession} and keeps it, together with its JDBC
+ * connection and result set, open until it is exhausted or closed. Rows are mapped one
+ * at a time by a {@code ResultHandler} that runs on a separate thread and hands them
+ * over through a small bounded buffer, so memory stays constant regardless of the
+ * number of rows (as long as the statement does not use nested result maps, which
+ * MyBatis has to keep in memory to build the object graph). The JDBC fetch size is
+ * the one set in the statement's {@code fetchSize} attribute.
+ * <p>
+ * The reading thread gets its own JDBC connection, that no Spring transaction uses, so
+ * the caller can keep issuing statements while it iterates: JDBC connections are not meant
+ * to be used by two threads at the same time. As a consequence the cursor does not see the
+ * uncommitted changes of a transaction active when it was opened. Such a cursor is closed
+ * before the transaction completes if the caller did not close it before. The session of
+ * the cursor is committed and closed like any other non transactional
+ * {@code SqlSessionTemplate} call.
+ * <p>
+ * Cursors are not thread safe and must always be closed, preferably in a
+ * {@code finally} block.
+ *
+ * @see SqlSessionTemplate#selectCursor(String, Object)
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class SqlSessionCursor<T> implements Iterator<T>, Closeable {
+
+  private static final Log logger = LogFactory.getLog(SqlSessionCursor.class);
+
+  private static final Object NULL_ROW = new Object();
+
+  private static final Object END_OF_ROWS = new Object();
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private final SqlSessionTemplate sqlSessionTemplate;
+
+  private final SqlSession sqlSession;
+
+  private final String statement;
+
+  private final Object parameter;
+
+  private final boolean commitRequired;
+
+  private final BlockingQueue<Object> buffer;
+
+  private final AtomicBoolean producerClaimed = new AtomicBoolean();
+
+  private final CountDownLatch producerStarted = new CountDownLatch(1);
+
+  private final CountDownLatch producerDone = new CountDownLatch(1);
+
+  private volatile boolean closed;
+
+  private volatile Throwable failure;
+
+  private Object next;
+
+  private boolean exhausted;
+
+  SqlSessionCursor(SqlSessionTemplate sqlSessionTemplate, SqlSession sqlSession, String statement,
+      Object parameter, int bufferSize, boolean commitRequired) {
+    this.sqlSessionTemplate = sqlSessionTemplate;
+    this.sqlSession = sqlSession;
+    this.statement = statement;
+    this.parameter = parameter;
+    this.commitRequired = commitRequired;
+    this.buffer = new ArrayBlockingQueue<Object>(bufferSize);
+  }
+
+  /**
+   * Starts reading rows on a thread of the given executor and waits for that thread to
+   * start, so a cursor is never left waiting for an executor that has no free thread.
+   *
+   * @throws TaskRejectedException if the executor rejects the task or does not start it
+   *   within the given time
+   */
+  void open(TaskExecutor taskExecutor, long startTimeout) {
+    taskExecutor.execute(new Runnable() {
+      public void run() {
+        produce();
+      }
+    });
+    boolean started = false;
+    try {
+      started = this.producerStarted.await(startTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (!started && this.producerClaimed.compareAndSet(false, true)) {
+      // the task will return right away if the executor ever runs it
+      this.closed = true;
+      throw new TaskRejectedException("Cursor over statement [" + this.statement
+          + "] was not started within " + startTimeout + " ms, the cursor task executor has no free thread");
+    }
+  }
+
+  private void produce() {
+    if (!this.producerClaimed.compareAndSet(false, true)) {
+      // open() gave up waiting for this task
+      return;
+    }
+    this.producerStarted.countDown();
+    try {
+      if (this.closed) {
+        // closed before a pooled executor started the task
+        return;
+      }
+      // runs on a thread with no Spring transaction bound, so the session gets a
+      // connection of its own
+      this.sqlSession.select(this.statement, this.parameter, new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          Object row = context.getResultObject();
+          if (!offer(row == null ? NULL_ROW : row)) {
+            context.stop();
+          }
+        }
+      });
+    } catch (Throwable t) {
+      this.failure = t;
+    } finally {
+      offer(END_OF_ROWS);
+      this.producerDone.countDown();
+    }
+  }
+
+  private boolean offer(Object row) {
+    try {
+      while (!this.closed) {
+        if (this.buffer.offer(row, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean hasNext() {
+    if (this.next != null) {
+      return true;
+    }
+    if (this.exhausted || this.closed) {
+      return false;
+    }
+    Object row = null;
+    try {
+      while (row == null) {
+        row = this.buffer.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (row == null && this.producerDone.getCount() == 0) {
+          // the producer always queues END_OF_ROWS last, unless the cursor was closed meanwhile
+          row = this.buffer.poll();
+          if (row == null) {
+            row = END_OF_ROWS;
+          }
+        } else if (row == null && this.closed) {
+          return false;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new MyBatisSystemException(e);
+    }
+    if (row == END_OF_ROWS) {
+      this.exhausted = true;
+      if (this.failure != null) {
+        Throwable t = this.failure;
+        close();
+        throw translate(t);
+      }
+      return false;
+    }
+    this.next = row;
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @SuppressWarnings("unchecked")
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Object row = this.next;
+    this.next = null;
+    return row == NULL_ROW ? null : (T) row;
+  }
+
+  /**
+   * Cursors are read only.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  public void remove() {
+    throw new UnsupportedOperationException("Cursors are read only");
+  }
+
+  /**
+   * Returns if this cursor was closed, either explicitly or at transaction completion.
+   */
+  public boolean isClosed() {
+    return this.closed;
+  }
+
+  /**
+   * Stops reading rows and releases the {@code SqlSession} and its connection.
+   * Closing an already closed cursor has no effect.
+   */
+  public void close() {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    if (!this.producerClaimed.compareAndSet(false, true)) {
+      try {
+        // the reading thread stops as soon as the current row is mapped
+        this.producerDone.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.buffer.clear();
+    this.next = null;
+    try {
+      if (this.commitRequired && this.failure == null
+          && !SqlSessionUtils.isSqlSessionTransactional(this.sqlSession, this.sqlSessionTemplate.getSqlSessionFactory())) {
+        this.sqlSession.commit(true);
+      }
+    } catch (PersistenceException e) {
+      throw this.sqlSessionTemplate.translateExceptionIfPossible(e);
+    } finally {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Closing cursor over statement [" + this.statement + "]");
+      }
+      closeSqlSession(this.sqlSession, this.sqlSessionTemplate.getSqlSessionFactory());
+    }
+  }
+
+  private RuntimeException translate(Throwable t) {
+    if (t instanceof PersistenceException) {
+      return this.sqlSessionTemplate.translateExceptionIfPossible((PersistenceException) t);
+    } else if (t instanceof RuntimeException) {
+      return (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return new MyBatisSystemException(t);
+  }
+
+  /**
+   * Closes a cursor opened inside a Spring transaction before the transaction commits or
+   * rolls back, like {@code SqlSessionSynchronization} closes its session, so the cursor
+   * does not outlive the unit of work it was opened in. Closing after completion is only
+   * a fallback.
+   */
+  static final class CursorSynchronization extends TransactionSynchronizationAdapter {
+
+    private final SqlSessionCursor<?> cursor;
+
+    CursorSynchronization(SqlSessionCursor<?> cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public int getOrder() {
+      return DataSourceUtils.CONNECTION_SYNCHRONIZATION_ORDER - 1;
+    }
+
+    @Override
+    public void beforeCompletion() {
+      closeCursor();
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      closeCursor();
+    }
+
+    private void closeCursor() {
+      if (!this.cursor.isClosed()) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Transaction synchronization closing cursor over statement [" + this.cursor.statement + "]");
+        }
+        this.cursor.close();
+      }
+    }
+
+  }
+
+}
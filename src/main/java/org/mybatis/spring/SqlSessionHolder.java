@@ -17,6 +17,12 @@ package org.mybatis.spring;
 
 import static org.springframework.util.Assert.notNull;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.springframework.dao.support.PersistenceExceptionTranslator;
@@ -25,8 +31,9 @@ import org.springframework.transaction.support.ResourceHolderSupport;
 /**
  * Used to keep current {@code SqlSession} in {@code TransactionSynchronizationManager}.
  * The {@code SqlSessionFactory} that created that {@code SqlSession} is used as a key.
- * {@code ExecutorType} is also kept to be able to check if the user is trying to change it
- * during a TX (that is not allowed) and throw a Exception in that case.
+ * {@code ExecutorType} is also kept because a TX can use one {@code SqlSession} per
+ * {@code ExecutorType}: the holder bound to the factory is the first one of a chain
+ * that holds the sessions of the other executor types, all sharing the TX connection.
  *
  * @version $Id$
  */
@@ -38,6 +45,14 @@ public final class SqlSessionHolder extends ResourceHolderSupport {
 
   private final PersistenceExceptionTranslator exceptionTranslator;
 
+  private int queuedStatements;
+
+  private int knownBatchResults;
+
+  private Map<BatchResult, Boolean> hiddenBatchResults;
+
+  private SqlSessionHolder next;
+
   /**
    * Creates a new holder instance.
    *
@@ -68,4 +83,96 @@ public final class SqlSessionHolder extends ResourceHolderSupport {
     return exceptionTranslator;
   }
 
+  /**
+   * Counts one more statement queued in a {@code BATCH} session since the last flush.
+   *
+   * @return the number of queued statements
+   */
+  int statementQueued() {
+    return ++this.queuedStatements;
+  }
+
+  /**
+   * Records that the queued statements have been flushed. The executor returns the
+   * results of every flush since the session last committed, so the ones this flush
+   * added are those past the results already known.
+   *
+   * @param batchResults all the results returned by the executor
+   * @param hide true to leave the results added by this flush out of
+   *   {@link #getVisibleBatchResults(List)}
+   */
+  void statementsFlushed(List<BatchResult> batchResults, boolean hide) {
+    this.queuedStatements = 0;
+    if (batchResults.size() < this.knownBatchResults) {
+      // the executor forgets its results when the session commits or rolls back
+      this.knownBatchResults = 0;
+      this.hiddenBatchResults = null;
+    }
+    if (hide && batchResults.size() > this.knownBatchResults) {
+      if (this.hiddenBatchResults == null) {
+        this.hiddenBatchResults = new IdentityHashMap<BatchResult, Boolean>();
+      }
+      for (BatchResult batchResult : batchResults.subList(this.knownBatchResults, batchResults.size())) {
+        this.hiddenBatchResults.put(batchResult, Boolean.TRUE);
+      }
+    }
+    this.knownBatchResults = batchResults.size();
+  }
+
+  /**
+   * Returns the given executor results without the hidden ones. The executor list itself
+   * is never modified.
+   */
+  List<BatchResult> getVisibleBatchResults(List<BatchResult> batchResults) {
+    if (this.hiddenBatchResults == null) {
+      return batchResults;
+    }
+    List<BatchResult> visible = new ArrayList<BatchResult>(batchResults.size());
+    for (BatchResult batchResult : batchResults) {
+      if (!this.hiddenBatchResults.containsKey(batchResult)) {
+        visible.add(batchResult);
+      }
+    }
+    return visible;
+  }
+
+  /**
+   * Returns the holder of the given executor type chained to this one, including itself.
+   *
+   * @return the holder, or null if the transaction has no session of that type yet
+   */
+  SqlSessionHolder getHolder(ExecutorType executorType) {
+    for (SqlSessionHolder holder = this; holder != null; holder = holder.next) {
+      if (holder.executorType == executorType) {
+        return holder;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the holder of the given session chained to this one, including itself.
+   *
+   * @return the holder, or null if the session is not bound to the transaction
+   */
+  SqlSessionHolder getHolder(SqlSession sqlSession) {
+    for (SqlSessionHolder holder = this; holder != null; holder = holder.next) {
+      if (holder.sqlSession == sqlSession) {
+        return holder;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Chains the holder of a session with another executor type to this one.
+   */
+  void addHolder(SqlSessionHolder holder) {
+    SqlSessionHolder last = this;
+    while (last.next != null) {
+      last = last.next;
+    }
+    last.next = holder;
+  }
+
 }
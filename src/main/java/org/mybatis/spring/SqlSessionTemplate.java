@@ -15,28 +15,42 @@
  */
 package org.mybatis.spring;
 
-import static java.lang.reflect.Proxy.newProxyInstance;
-import static org.apache.ibatis.reflection.ExceptionUtil.unwrapThrowable;
+import static org.mybatis.spring.SqlSessionUtils.acquireSqlSession;
 import static org.mybatis.spring.SqlSessionUtils.closeSqlSession;
 import static org.mybatis.spring.SqlSessionUtils.getSqlSession;
-import static org.mybatis.spring.SqlSessionUtils.isSqlSessionTransactional;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.getResource;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization;
+import static org.springframework.util.Assert.isTrue;
 import static org.springframework.util.Assert.notNull;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.mybatis.spring.SqlSessionUtils.SqlSessionHandle;
+import org.mybatis.spring.transaction.SpringManagedTransaction;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 
 /**
@@ -54,6 +68,16 @@ import org.springframework.dao.support.PersistenceExceptionTranslator;
  * This template converts MyBatis PersistenceExceptions into unchecked
  * DataAccessExceptions, using, by default, a {@code MyBatisExceptionTranslator}.
  * <p>
+ * Templates with different executor types can be used in the same transaction: each
+ * executor type gets its own session on the transaction connection, and statements
+ * queued by the {@code BATCH} session are flushed before any other session runs a
+ * statement, so reads see the batched writes.
+ * <p>
+ * Every {@code SqlSession} method is routed to the resolved session through a
+ * typed {@code SqlSessionCallback}, so no reflection is involved on the call path.
+ * The same callback mechanism is available to client code through
+ * {@link #execute(SqlSessionCallback)}.
+ * <p>
  * Because SqlSessionTemplate is thread safe, a single instance can be shared
  * by all DAOs; there should also be a small memory savings by doing this. This
  * pattern can be used in Spring configuration files as follows:
@@ -67,19 +91,40 @@ import org.springframework.dao.support.PersistenceExceptionTranslator;
  * </pre>
  *
  * @see SqlSessionFactory
+ * @see SqlSessionCallback
  * @see MyBatisExceptionTranslator
  * @version $Id$
  */
 public class SqlSessionTemplate implements SqlSession {
 
+  private static final Log logger = LogFactory.getLog(SqlSessionTemplate.class);
+
+  private static final int DEFAULT_CURSOR_BUFFER_SIZE = 100;
+
+  private static final int DEFAULT_MAX_CURSOR_THREADS = 16;
+
+  private static final long DEFAULT_CURSOR_START_TIMEOUT = 10000;
+
   private final SqlSessionFactory sqlSessionFactory;
 
   private final ExecutorType executorType;
 
-  private final SqlSession sqlSessionProxy;
-
   private final PersistenceExceptionTranslator exceptionTranslator;
 
+  private ThreadLocal<ThreadBoundSession> threadBoundSessions;
+
+  private boolean forceCommitOnSelect = true;
+
+  private TaskExecutor cursorTaskExecutor;
+
+  private long cursorStartTimeout = DEFAULT_CURSOR_START_TIMEOUT;
+
+  private int batchFlushThreshold;
+
+  private boolean keepAutoFlushedBatchResults = true;
+
+  private StatementExecutionListener[] statementExecutionListeners = new StatementExecutionListener[0];
+
   /**
    * Constructs a Spring managed SqlSession with the {@code SqlSessionFactory}
    * provided as an argument.
@@ -128,10 +173,6 @@ public class SqlSessionTemplate implements SqlSession {
     this.sqlSessionFactory = sqlSessionFactory;
     this.executorType = executorType;
     this.exceptionTranslator = exceptionTranslator;
-    this.sqlSessionProxy = (SqlSession) newProxyInstance(
-        SqlSessionFactory.class.getClassLoader(),
-        new Class[] { SqlSession.class },
-        new SqlSessionInterceptor());
   }
 
   public SqlSessionFactory getSqlSessionFactory() {
@@ -146,123 +187,594 @@ public class SqlSessionTemplate implements SqlSession {
     return this.exceptionTranslator;
   }
 
+  /**
+   * Sets whether non transactional calls to statements whose {@code SqlCommandType}
+   * is {@code SELECT} are force committed before the {@code SqlSession} is closed.
+   * <p>
+   * Defaults to true because some databases require a commit or rollback before
+   * a connection is closed. When set to false, reads outside a Spring transaction
+   * skip that commit, saving a database round trip per call when the pool hands out
+   * connections with autoCommit disabled. The session local cache is still cleared
+   * and the connection is released as usual. Calls that are not statements (like
+   * {@code getConnection()} or {@code execute()}) and writes are always committed.
+   * <p>
+   * This setting does not apply to the sessions reused with
+   * {@link #setReuseNonTransactionalSessions(boolean)}: their connection stays open
+   * between calls, so they are committed after every call to end the transaction the
+   * select started, otherwise later calls could read a stale snapshot and read locks
+   * would be held until the thread session is released.
+   *
+   * @param forceCommitOnSelect false to skip the commit after non transactional selects
+   * @since 1.2.0
+   */
+  public void setForceCommitOnSelect(boolean forceCommitOnSelect) {
+    this.forceCommitOnSelect = forceCommitOnSelect;
+  }
+
+  public boolean isForceCommitOnSelect() {
+    return this.forceCommitOnSelect;
+  }
+
+  /**
+   * Sets the {@code TaskExecutor} whose threads read the rows of the cursors opened by
+   * this template. Each open cursor keeps one thread busy until it is closed, so the
+   * executor must run tasks on threads other than the caller's.
+   * <p>
+   * Defaults to a pool of up to 16 daemon threads, created the first time a cursor is
+   * opened, that rejects cursors beyond that limit.
+   *
+   * @param cursorTaskExecutor the executor used to read cursor rows
+   * @since 1.2.0
+   */
+  public void setCursorTaskExecutor(TaskExecutor cursorTaskExecutor) {
+    notNull(cursorTaskExecutor, "Property 'cursorTaskExecutor' is required");
+    synchronized (this) {
+      this.cursorTaskExecutor = cursorTaskExecutor;
+    }
+  }
+
+  /**
+   * Sets how long, in milliseconds, opening a cursor waits for the cursor task executor
+   * to start reading its rows before failing with a {@code TaskRejectedException}.
+   * Defaults to 10 seconds.
+   *
+   * @param cursorStartTimeout maximum time to wait for a thread to read the rows
+   * @since 1.2.0
+   */
+  public void setCursorStartTimeout(long cursorStartTimeout) {
+    isTrue(cursorStartTimeout > 0, "Property 'cursorStartTimeout' must be greater than zero");
+    this.cursorStartTimeout = cursorStartTimeout;
+  }
+
+  private synchronized TaskExecutor getCursorTaskExecutor() {
+    if (this.cursorTaskExecutor == null) {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("mybatis-cursor-");
+      threadFactory.setDaemon(true);
+      this.cursorTaskExecutor = new ConcurrentTaskExecutor(new ThreadPoolExecutor(0, DEFAULT_MAX_CURSOR_THREADS,
+          60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory));
+    }
+    return this.cursorTaskExecutor;
+  }
+
+  /**
+   * Enables the reuse of one {@code SqlSession} per thread for calls made while
+   * no Spring transaction synchronization is active.
+   * <p>
+   * By default every non transactional call opens a new {@code SqlSession}, commits
+   * and closes it. When this flag is set the session (and its executor) opened
+   * for the first call on a thread is kept and reused by the following ones. It is still
+   * committed after each call, selects included regardless of
+   * {@link #setForceCommitOnSelect(boolean)}, which also clears its local cache, so every call sees
+   * the same data it would see with a fresh session. The session is discarded if a call
+   * fails and released as soon as a Spring transaction becomes active on the thread,
+   * so transactional calls always use the session bound to the transaction.
+   * <p>
+   * The JDBC connection is not kept: it is returned to the {@code DataSource} after each call
+   * and a new one is taken by the next call, so idle threads never hold a pooled connection.
+   * The session is opened over the {@code DataSource} of the {@code SqlSessionFactory}
+   * environment with a {@code SpringManagedTransaction}. It can be closed
+   * with {@link #releaseThreadSession()} when the thread is done with it.
+   *
+   * @param reuseNonTransactionalSessions true to reuse a session per thread
+   * @since 1.2.0
+   */
+  public void setReuseNonTransactionalSessions(boolean reuseNonTransactionalSessions) {
+    this.threadBoundSessions = reuseNonTransactionalSessions ? new ThreadLocal<ThreadBoundSession>() : null;
+  }
+
+  public boolean isReuseNonTransactionalSessions() {
+    return this.threadBoundSessions != null;
+  }
+
+  /**
+   * Closes the {@code SqlSession} kept for the current thread, if any.
+   * Does nothing if session reuse is not enabled.
+   *
+   * @see #setReuseNonTransactionalSessions(boolean)
+   * @since 1.2.0
+   */
+  public void releaseThreadSession() {
+    if (this.threadBoundSessions != null) {
+      ThreadBoundSession bound = this.threadBoundSessions.get();
+      if (bound != null && !bound.inUse) {
+        this.threadBoundSessions.remove();
+        if (logger.isDebugEnabled()) {
+          logger.debug("Closing thread bound SqlSession [" + bound.sqlSession + "]");
+        }
+        bound.sqlSession.close();
+      }
+    }
+  }
+
+  /**
+   * Sets the number of statements a {@code BATCH} session bound to a Spring transaction
+   * queues before they are flushed to the database, instead of waiting for the commit.
+   * <p>
+   * Defaults to 0, statements are only flushed at commit time, when a select is run or
+   * when {@link #flushStatements()} is called. Long transactions that write many rows
+   * should set a threshold so the executor does not keep every JDBC batch open until the
+   * end. Note that MyBatis still keeps the {@code BatchResult} of every flush, with its
+   * parameters, until the session commits.
+   *
+   * @param batchFlushThreshold the number of queued statements that triggers a flush
+   * @since 1.2.0
+   */
+  public void setBatchFlushThreshold(int batchFlushThreshold) {
+    isTrue(batchFlushThreshold >= 0, "Property 'batchFlushThreshold' must not be negative");
+    this.batchFlushThreshold = batchFlushThreshold;
+  }
+
+  public int getBatchFlushThreshold() {
+    return this.batchFlushThreshold;
+  }
+
+  /**
+   * Sets whether {@link #flushStatements()} returns the {@code BatchResult}s of automatic
+   * flushes. Like MyBatis does, it returns the results of every flush since the
+   * transaction began, so defaults to true. When set to false the results of the
+   * statements flushed because of the threshold are left out, the list of the executor
+   * itself is not modified.
+   *
+   * @param keepAutoFlushedBatchResults false to leave out the results of automatic flushes
+   * @since 1.2.0
+   */
+  public void setKeepAutoFlushedBatchResults(boolean keepAutoFlushedBatchResults) {
+    this.keepAutoFlushedBatchResults = keepAutoFlushedBatchResults;
+  }
+
+  public boolean isKeepAutoFlushedBatchResults() {
+    return this.keepAutoFlushedBatchResults;
+  }
+
+  /**
+   * Sets the listeners notified after each statement executed through this template,
+   * with its elapsed time, row count and failure. Calls that are not statements (like
+   * {@code getConnection()} or {@code execute()}) are not reported.
+   * <p>
+   * By default there are no listeners and statements are not timed at all.
+   *
+   * @param statementExecutionListeners the listeners to notify
+   * @since 1.2.0
+   */
+  public void setStatementExecutionListeners(List<StatementExecutionListener> statementExecutionListeners) {
+    notNull(statementExecutionListeners, "Property 'statementExecutionListeners' is required");
+    this.statementExecutionListeners = statementExecutionListeners.toArray(
+        new StatementExecutionListener[statementExecutionListeners.size()]);
+  }
+
+  /**
+   * Executes the given callback against the {@code SqlSession} bound to the
+   * current Spring transaction, or against a new one if there is none.
+   * <p>
+   * Non transactional sessions are committed and closed once the callback
+   * returns, and any {@code PersistenceException} is translated by the
+   * configured {@code PersistenceExceptionTranslator}, exactly as the
+   * {@code SqlSession} methods of this template do.
+   *
+   * @param action callback object that specifies the MyBatis action
+   * @return a result object returned by the action, or {@code null}
+   * @since 1.2.0
+   */
+  public <T> T execute(SqlSessionCallback<T> action) {
+    notNull(action, "Callback object must not be null");
+    return doExecute(null, action);
+  }
+
+  private <T> T execute(String operation, String statement, Object parameter, SqlSessionCallback<T> action) {
+    if (this.statementExecutionListeners.length == 0) {
+      return doExecute(statement, action);
+    }
+
+    long start = System.nanoTime();
+    T result = null;
+    RuntimeException failure = null;
+    try {
+      result = doExecute(statement, action);
+      return result;
+    } catch (RuntimeException e) {
+      failure = e;
+      throw e;
+    } finally {
+      StatementExecution execution = new StatementExecution(this.sqlSessionFactory.getConfiguration(),
+          statement, operation, parameter, System.nanoTime() - start, countRows(operation, result), failure);
+      for (StatementExecutionListener listener : this.statementExecutionListeners) {
+        try {
+          listener.statementExecuted(execution);
+        } catch (RuntimeException e) {
+          logger.warn("StatementExecutionListener [" + listener + "] failed: " + e);
+        }
+      }
+    }
+  }
+
+  private static int countRows(String operation, Object result) {
+    if (result instanceof List) {
+      return ((List<?>) result).size();
+    } else if (result instanceof Map) {
+      return ((Map<?, ?>) result).size();
+    } else if ("selectOne".equals(operation)) {
+      return result == null ? 0 : 1;
+    } else if (result instanceof Integer) {
+      // BATCH executors return a negative placeholder until statements are flushed
+      return Math.max((Integer) result, -1);
+    }
+    return -1;
+  }
+
+  private <T> T doExecute(String statement, SqlSessionCallback<T> action) {
+    boolean commitRequired = this.forceCommitOnSelect || !isSelect(statement);
+
+    if (this.threadBoundSessions != null) {
+      ThreadBoundSession bound = this.threadBoundSessions.get();
+      if (isSynchronizationActive()) {
+        // a transaction has begun on this thread, the transactional session takes over
+        releaseThreadSession();
+      } else if (bound == null || !bound.inUse) {
+        // nested calls (i.e. from a ResultHandler) fall back to a new session
+        return executeInThreadBoundSession(bound, action);
+      }
+    }
+
+    // a single transaction resource lookup for the whole call
+    SqlSessionHandle handle = acquireSqlSession(
+        this.sqlSessionFactory,
+        this.executorType,
+        this.exceptionTranslator);
+    try {
+      SqlSession sqlSession = handle.getSqlSession();
+      T result = action.doInSqlSession(sqlSession);
+      if (this.batchFlushThreshold > 0 && statement != null && handle.isTransactional()
+          && this.executorType == ExecutorType.BATCH) {
+        autoFlushStatements(handle, statement);
+      }
+      if (commitRequired && !handle.isTransactional()) {
+        // force commit even on non-dirty sessions because some databases require
+        // a commit/rollback before calling close()
+        sqlSession.commit(true);
+      }
+      return result;
+    } catch (PersistenceException e) {
+      throw translateExceptionIfPossible(e);
+    } finally {
+      handle.release();
+    }
+  }
+
+  private void autoFlushStatements(SqlSessionHandle handle, String statement) {
+    SqlSessionHolder holder = handle.getHolder();
+    if (isSelect(statement)) {
+      // the BATCH executor flushed queued statements before the query, nothing is flushed now
+      holder.statementsFlushed(handle.getSqlSession().flushStatements(), false);
+    } else if (holder.statementQueued() >= this.batchFlushThreshold) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Flushing " + this.batchFlushThreshold + " statements queued in SqlSession [" + handle.getSqlSession() + "]");
+      }
+      holder.statementsFlushed(handle.getSqlSession().flushStatements(), !this.keepAutoFlushedBatchResults);
+    }
+  }
+
+  private <T> T executeInThreadBoundSession(ThreadBoundSession bound, SqlSessionCallback<T> action) {
+    if (bound == null) {
+      Configuration configuration = this.sqlSessionFactory.getConfiguration();
+      // opened by hand to keep hold of the transaction and release its connection after each call
+      SpringManagedTransaction transaction = new SpringManagedTransaction(configuration.getEnvironment().getDataSource());
+      bound = new ThreadBoundSession(
+          new DefaultSqlSession(configuration, configuration.newExecutor(transaction, this.executorType)),
+          transaction);
+      this.threadBoundSessions.set(bound);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Created thread bound SqlSession [" + bound.sqlSession + "]");
+      }
+    }
+    bound.inUse = true;
+    boolean completed = false;
+    try {
+      T result = action.doInSqlSession(bound.sqlSession);
+      // resets the session for the next call: flushes statements, clears the local cache
+      // and commits the connection. Selects are committed too, even when forceCommitOnSelect
+      // is off, so the connection goes back to the pool with no transaction left open
+      bound.sqlSession.commit(true);
+      bound.transaction.close();
+      completed = true;
+      return result;
+    } catch (PersistenceException e) {
+      throw translateExceptionIfPossible(e);
+    } catch (SQLException e) {
+      throw translateExceptionIfPossible(new PersistenceException("Error releasing the JDBC Connection of thread bound SqlSession", e));
+    } finally {
+      bound.inUse = false;
+      if (!completed) {
+        // the session state is unknown after a failure, do not reuse it
+        releaseThreadSession();
+      }
+    }
+  }
+
+  boolean isSelect(String statement) {
+    if (statement == null) {
+      return false;
+    }
+    Configuration configuration = this.sqlSessionFactory.getConfiguration();
+    // unknown statements will make MyBatis fail later on
+    return configuration.hasStatement(statement)
+        && configuration.getMappedStatement(statement).getSqlCommandType() == SqlCommandType.SELECT;
+  }
+
+  RuntimeException translateExceptionIfPossible(PersistenceException e) {
+    if (this.exceptionTranslator != null) {
+      DataAccessException translated = this.exceptionTranslator.translateExceptionIfPossible(e);
+      if (translated != null) {
+        return translated;
+      }
+    }
+    return e;
+  }
+
   /**
    * {@inheritDoc}
    */
-  public <T> T selectOne(String statement) {
-    return this.sqlSessionProxy.<T> selectOne(statement);
+  public <T> T selectOne(final String statement) {
+    return execute("selectOne", statement, null, new SqlSessionCallback<T>() {
+      public T doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<T> selectOne(statement);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public <T> T selectOne(String statement, Object parameter) {
-    return this.sqlSessionProxy.<T> selectOne(statement, parameter);
+  public <T> T selectOne(final String statement, final Object parameter) {
+    return execute("selectOne", statement, parameter, new SqlSessionCallback<T>() {
+      public T doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<T> selectOne(statement, parameter);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
-    return this.sqlSessionProxy.<K, V> selectMap(statement, mapKey);
+  public <K, V> Map<K, V> selectMap(final String statement, final String mapKey) {
+    return execute("selectMap", statement, null, new SqlSessionCallback<Map<K, V>>() {
+      public Map<K, V> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<K, V> selectMap(statement, mapKey);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
-    return this.sqlSessionProxy.<K, V> selectMap(statement, parameter, mapKey);
+  public <K, V> Map<K, V> selectMap(final String statement, final Object parameter, final String mapKey) {
+    return execute("selectMap", statement, parameter, new SqlSessionCallback<Map<K, V>>() {
+      public Map<K, V> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<K, V> selectMap(statement, parameter, mapKey);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
-    return this.sqlSessionProxy.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+  public <K, V> Map<K, V> selectMap(final String statement, final Object parameter, final String mapKey, final RowBounds rowBounds) {
+    return execute("selectMap", statement, parameter, new SqlSessionCallback<Map<K, V>>() {
+      public Map<K, V> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public <E> List<E> selectList(String statement) {
-    return this.sqlSessionProxy.<E> selectList(statement);
+  public <E> List<E> selectList(final String statement) {
+    return execute("selectList", statement, null, new SqlSessionCallback<List<E>>() {
+      public List<E> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<E> selectList(statement);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public <E> List<E> selectList(String statement, Object parameter) {
-    return this.sqlSessionProxy.<E> selectList(statement, parameter);
+  public <E> List<E> selectList(final String statement, final Object parameter) {
+    return execute("selectList", statement, parameter, new SqlSessionCallback<List<E>>() {
+      public List<E> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<E> selectList(statement, parameter);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
-    return this.sqlSessionProxy.<E> selectList(statement, parameter, rowBounds);
+  public <E> List<E> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+    return execute("selectList", statement, parameter, new SqlSessionCallback<List<E>>() {
+      public List<E> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<E> selectList(statement, parameter, rowBounds);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public void select(String statement, ResultHandler handler) {
-    this.sqlSessionProxy.select(statement, handler);
+  public void select(final String statement, final ResultHandler handler) {
+    execute("select", statement, null, new SqlSessionCallback<Object>() {
+      public Object doInSqlSession(SqlSession sqlSession) {
+        sqlSession.select(statement, handler);
+        return null;
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public void select(String statement, Object parameter, ResultHandler handler) {
-    this.sqlSessionProxy.select(statement, parameter, handler);
+  public void select(final String statement, final Object parameter, final ResultHandler handler) {
+    execute("select", statement, parameter, new SqlSessionCallback<Object>() {
+      public Object doInSqlSession(SqlSession sqlSession) {
+        sqlSession.select(statement, parameter, handler);
+        return null;
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
-    this.sqlSessionProxy.select(statement, parameter, rowBounds, handler);
+  public void select(final String statement, final Object parameter, final RowBounds rowBounds, final ResultHandler handler) {
+    execute("select", statement, parameter, new SqlSessionCallback<Object>() {
+      public Object doInSqlSession(SqlSession sqlSession) {
+        sqlSession.select(statement, parameter, rowBounds, handler);
+        return null;
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public int insert(String statement) {
-    return this.sqlSessionProxy.insert(statement);
+  public int insert(final String statement) {
+    return execute("insert", statement, null, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.insert(statement);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public int insert(String statement, Object parameter) {
-    return this.sqlSessionProxy.insert(statement, parameter);
+  public int insert(final String statement, final Object parameter) {
+    return execute("insert", statement, parameter, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.insert(statement, parameter);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public int update(String statement) {
-    return this.sqlSessionProxy.update(statement);
+  public int update(final String statement) {
+    return execute("update", statement, null, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.update(statement);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public int update(String statement, Object parameter) {
-    return this.sqlSessionProxy.update(statement, parameter);
+  public int update(final String statement, final Object parameter) {
+    return execute("update", statement, parameter, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.update(statement, parameter);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public int delete(String statement) {
-    return this.sqlSessionProxy.delete(statement);
+  public int delete(final String statement) {
+    return execute("delete", statement, null, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.delete(statement);
+      }
+    });
   }
 
   /**
    * {@inheritDoc}
    */
-  public int delete(String statement, Object parameter) {
-    return this.sqlSessionProxy.delete(statement, parameter);
+  public int delete(final String statement, final Object parameter) {
+    return execute("delete", statement, parameter, new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.delete(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * Opens a cursor over the results of a select statement.
+   *
+   * @param statement unique identifier matching the statement to use
+   * @return an open cursor that must be closed by the caller
+   * @see #selectCursor(String, Object)
+   * @since 1.2.0
+   */
+  public <T> SqlSessionCursor<T> selectCursor(String statement) {
+    return this.<T> selectCursor(statement, null);
+  }
+
+  /**
+   * Opens a cursor over the results of a select statement, mapping and returning
+   * rows one at a time as the cursor is iterated.
+   * <p>
+   * The cursor uses a dedicated {@code SqlSession} and connection that are kept open
+   * until the cursor is closed. That connection is never the one of an active Spring
+   * transaction, so other statements can be run while the cursor is open; a cursor
+   * opened inside a transaction is closed before it completes at the latest.
+   *
+   * @param statement unique identifier matching the statement to use
+   * @param parameter a parameter object to pass to the statement
+   * @return an open cursor that must be closed by the caller
+   * @see SqlSessionCursor
+   * @since 1.2.0
+   */
+  public <T> SqlSessionCursor<T> selectCursor(String statement, Object parameter) {
+    notNull(statement, "Parameter 'statement' is required");
+
+    int bufferSize = DEFAULT_CURSOR_BUFFER_SIZE;
+    Configuration configuration = this.sqlSessionFactory.getConfiguration();
+    if (configuration.hasStatement(statement)) {
+      Integer fetchSize = configuration.getMappedStatement(statement).getFetchSize();
+      if (fetchSize != null && fetchSize > 0) {
+        bufferSize = fetchSize;
+      }
+    }
+
+    // the connection is opened later on the reading thread, outside any transaction
+    SqlSession sqlSession = this.sqlSessionFactory.openSession(this.executorType);
+    SqlSessionCursor<T> cursor;
+    try {
+      cursor = new SqlSessionCursor<T>(this, sqlSession, statement, parameter, bufferSize,
+          this.forceCommitOnSelect || !isSelect(statement));
+      cursor.open(getCursorTaskExecutor(), this.cursorStartTimeout);
+    } catch (RuntimeException e) {
+      closeSqlSession(sqlSession, this.sqlSessionFactory);
+      throw e instanceof PersistenceException ? translateExceptionIfPossible((PersistenceException) e) : e;
+    }
+
+    if (isSynchronizationActive()) {
+      registerSynchronization(new SqlSessionCursor.CursorSynchronization(cursor));
+    }
+    return cursor;
   }
 
   /**
@@ -311,7 +823,12 @@ public class SqlSessionTemplate implements SqlSession {
    * {@inheritDoc}
    */
   public void clearCache() {
-    this.sqlSessionProxy.clearCache();
+    execute(new SqlSessionCallback<Object>() {
+      public Object doInSqlSession(SqlSession sqlSession) {
+        sqlSession.clearCache();
+        return null;
+      }
+    });
   }
 
   /**
@@ -326,7 +843,11 @@ public class SqlSessionTemplate implements SqlSession {
    * {@inheritDoc}
    */
   public Connection getConnection() {
-    return this.sqlSessionProxy.getConnection();
+    return execute(new SqlSessionCallback<Connection>() {
+      public Connection doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.getConnection();
+      }
+    });
   }
 
   /**
@@ -336,42 +857,39 @@ public class SqlSessionTemplate implements SqlSession {
    *
    */
   public List<BatchResult> flushStatements() {
-    return this.sqlSessionProxy.flushStatements();
-  }
-
-  /**
-   * Proxy needed to route MyBatis method calls to the proper SqlSession got
-   * from Spring's Transaction Manager
-   * It also unwraps exceptions thrown by {@code Method#invoke(Object, Object...)} to
-   * pass a {@code PersistenceException} to the {@code PersistenceExceptionTranslator}.
-   */
-  private class SqlSessionInterceptor implements InvocationHandler {
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-      final SqlSession sqlSession = getSqlSession(
-          SqlSessionTemplate.this.sqlSessionFactory,
-          SqlSessionTemplate.this.executorType,
-          SqlSessionTemplate.this.exceptionTranslator);
-      try {
-        Object result = method.invoke(sqlSession, args);
-        if (!isSqlSessionTransactional(sqlSession, SqlSessionTemplate.this.sqlSessionFactory)) {
-          // force commit even on non-dirty sessions because some databases require
-          // a commit/rollback before calling close()
-          sqlSession.commit(true);
+    return execute(new SqlSessionCallback<List<BatchResult>>() {
+      public List<BatchResult> doInSqlSession(SqlSession sqlSession) {
+        List<BatchResult> batchResults = sqlSession.flushStatements();
+        SqlSessionHolder holder = (SqlSessionHolder) getResource(SqlSessionTemplate.this.sqlSessionFactory);
+        if (holder != null) {
+          holder = holder.getHolder(sqlSession);
         }
-        return result;
-      } catch (Throwable t) {
-        Throwable unwrapped = unwrapThrowable(t);
-        if (SqlSessionTemplate.this.exceptionTranslator != null && unwrapped instanceof PersistenceException) {
-          Throwable translated = SqlSessionTemplate.this.exceptionTranslator.translateExceptionIfPossible((PersistenceException) unwrapped);
-          if (translated != null) {
-            unwrapped = translated;
-          }
+        if (holder != null) {
+          holder.statementsFlushed(batchResults, false);
+          batchResults = holder.getVisibleBatchResults(batchResults);
         }
-        throw unwrapped;
-      } finally {
-        closeSqlSession(sqlSession, SqlSessionTemplate.this.sqlSessionFactory);
+        return batchResults;
       }
+    });
+  }
+
+  /**
+   * {@code SqlSession} kept for the current thread when non transactional session
+   * reuse is enabled.
+   */
+  private static final class ThreadBoundSession {
+
+    private final SqlSession sqlSession;
+
+    private final SpringManagedTransaction transaction;
+
+    private boolean inUse;
+
+    private ThreadBoundSession(SqlSession sqlSession, SpringManagedTransaction transaction) {
+      this.sqlSession = sqlSession;
+      this.transaction = transaction;
     }
+
   }
 
 }
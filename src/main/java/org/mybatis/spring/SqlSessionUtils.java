@@ -82,6 +82,26 @@ public final class SqlSessionUtils {
    * @see SpringManagedTransactionFactory
    */
   public static SqlSession getSqlSession(SqlSessionFactory sessionFactory, ExecutorType executorType, PersistenceExceptionTranslator exceptionTranslator) {
+    return acquireSqlSession(sessionFactory, executorType, exceptionTranslator).getSqlSession();
+  }
+
+  /**
+   * Gets an SqlSession exactly like {@link #getSqlSession(SqlSessionFactory, ExecutorType, PersistenceExceptionTranslator)}
+   * and returns it in a handle that already knows whether it is bound to the current transaction.
+   * The handle is meant to be used for a single call on the current thread: checking if the session is
+   * transactional and releasing it do not look up the transaction resources again, as
+   * {@link #isSqlSessionTransactional(SqlSession, SqlSessionFactory)} and
+   * {@link #closeSqlSession(SqlSession, SqlSessionFactory)} do.
+   *
+   * @param sessionFactory a MyBatis {@code SqlSessionFactory} to create new sessions
+   * @param executorType The executor type of the SqlSession to create
+   * @param exceptionTranslator Optional. Translates SqlSession.commit() exceptions to Spring exceptions.
+   * @return a handle of the session that must be released once done
+   * @throws TransientDataAccessResourceException if a transaction is active and the
+   *             {@code SqlSessionFactory} is not using a {@code SpringManagedTransactionFactory}
+   * @since 1.2.0
+   */
+  public static SqlSessionHandle acquireSqlSession(SqlSessionFactory sessionFactory, ExecutorType executorType, PersistenceExceptionTranslator exceptionTranslator) {
 
     notNull(sessionFactory, "No SqlSessionFactory specified");
     notNull(executorType, "No ExecutorType specified");
@@ -89,17 +109,36 @@ public final class SqlSessionUtils {
     SqlSessionHolder holder = (SqlSessionHolder) getResource(sessionFactory);
 
     if (holder != null && holder.isSynchronizedWithTransaction()) {
-      if (holder.getExecutorType() != executorType) {
-        throw new TransientDataAccessResourceException("Cannot change the ExecutorType when there is an existing transaction");
-      }
+      SqlSessionHolder typeHolder = holder.getHolder(executorType);
 
-      holder.requested();
+      if (typeHolder == null) {
+        // another executor type already joined the transaction, this one gets its own session
+        // that shares the same Spring managed connection
+        SqlSession session = sessionFactory.openSession(executorType);
 
-      if (logger.isDebugEnabled()) {
-        logger.debug("Fetched SqlSession [" + holder.getSqlSession() + "] from current transaction");
+        if (logger.isDebugEnabled()) {
+          logger.debug("Registering transaction synchronization for " + executorType + " SqlSession [" + session + "]");
+        }
+
+        typeHolder = new SqlSessionHolder(session, executorType, exceptionTranslator);
+        holder.addHolder(typeHolder);
+        registerSynchronization(new SqlSessionSynchronization(typeHolder, sessionFactory, false));
+        typeHolder.setSynchronizedWithTransaction(true);
+      } else if (logger.isDebugEnabled()) {
+        logger.debug("Fetched SqlSession [" + typeHolder.getSqlSession() + "] from current transaction");
+      }
+
+      if (executorType != ExecutorType.BATCH) {
+        // statements queued by a BATCH session must run before anything else on the connection
+        SqlSessionHolder batchHolder = holder.getHolder(ExecutorType.BATCH);
+        if (batchHolder != null) {
+          flushStatements(batchHolder);
+        }
       }
 
-      return holder.getSqlSession();
+      typeHolder.requested();
+
+      return new SqlSessionHandle(typeHolder.getSqlSession(), typeHolder);
     }
 
     if (logger.isDebugEnabled()) {
@@ -124,9 +163,10 @@ public final class SqlSessionUtils {
 
         holder = new SqlSessionHolder(session, executorType, exceptionTranslator);
         bindResource(sessionFactory, holder);
-        registerSynchronization(new SqlSessionSynchronization(holder, sessionFactory));
+        registerSynchronization(new SqlSessionSynchronization(holder, sessionFactory, true));
         holder.setSynchronizedWithTransaction(true);
         holder.requested();
+        return new SqlSessionHandle(session, holder);
       } else {
         if (getResource(environment.getDataSource()) == null) {
           if (logger.isDebugEnabled()) {
@@ -143,7 +183,7 @@ public final class SqlSessionUtils {
       }
     }
 
-    return session;
+    return new SqlSessionHandle(session, null);
   }
 
   /**
@@ -160,7 +200,10 @@ public final class SqlSessionUtils {
     notNull(sessionFactory, "No SqlSessionFactory specified");
 
     SqlSessionHolder holder = (SqlSessionHolder) getResource(sessionFactory);
-    if ((holder != null) && (holder.getSqlSession() == session)) {
+    if (holder != null) {
+      holder = holder.getHolder(session);
+    }
+    if (holder != null) {
       if (logger.isDebugEnabled()) {
         logger.debug("Releasing transactional SqlSession [" + session + "]");
       }
@@ -186,7 +229,80 @@ public final class SqlSessionUtils {
 
     SqlSessionHolder holder = (SqlSessionHolder) getResource(sessionFactory);
 
-    return (holder != null) && (holder.getSqlSession() == session);
+    return (holder != null) && (holder.getHolder(session) != null);
+  }
+
+  /**
+   * Flushes the statements queued by a transactional {@code BATCH} session, translating
+   * the exception with the translator of its holder, if any.
+   */
+  private static void flushStatements(SqlSessionHolder holder) {
+    try {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Transaction synchronization flushing SqlSession [" + holder.getSqlSession() + "]");
+      }
+      holder.statementsFlushed(holder.getSqlSession().flushStatements(), false);
+    } catch (PersistenceException p) {
+      if (holder.getPersistenceExceptionTranslator() != null) {
+        DataAccessException translated = holder.getPersistenceExceptionTranslator().translateExceptionIfPossible(p);
+        if (translated != null) {
+          throw translated;
+        }
+      }
+      throw p;
+    }
+  }
+
+  /**
+   * A {@code SqlSession} acquired with {@link SqlSessionUtils#acquireSqlSession(SqlSessionFactory, ExecutorType, PersistenceExceptionTranslator)},
+   * along with the transaction holder it was found in, if any.
+   *
+   * @since 1.2.0
+   */
+  public static final class SqlSessionHandle {
+
+    private final SqlSession sqlSession;
+
+    private final SqlSessionHolder holder;
+
+    private SqlSessionHandle(SqlSession sqlSession, SqlSessionHolder holder) {
+      this.sqlSession = sqlSession;
+      this.holder = holder;
+    }
+
+    public SqlSession getSqlSession() {
+      return this.sqlSession;
+    }
+
+    SqlSessionHolder getHolder() {
+      return this.holder;
+    }
+
+    /**
+     * Returns if the session is managed by Spring {@code TransactionSynchronizationManager}.
+     */
+    public boolean isTransactional() {
+      return this.holder != null;
+    }
+
+    /**
+     * Releases the session: just updates the reference counter of a transactional session,
+     * closes it otherwise.
+     */
+    public void release() {
+      if (this.holder != null) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Releasing transactional SqlSession [" + this.sqlSession + "]");
+        }
+        this.holder.released();
+      } else {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Closing non transactional SqlSession [" + this.sqlSession + "]");
+        }
+        this.sqlSession.close();
+      }
+    }
+
   }
 
   /**
@@ -201,12 +317,16 @@ public final class SqlSessionUtils {
 
     private final SqlSessionFactory sessionFactory;
 
-    public SqlSessionSynchronization(SqlSessionHolder holder, SqlSessionFactory sessionFactory) {
+    // false for the sessions of other executor types, chained to the bound holder
+    private final boolean bound;
+
+    public SqlSessionSynchronization(SqlSessionHolder holder, SqlSessionFactory sessionFactory, boolean bound) {
       notNull(holder, "Parameter 'holder' must be not null");
       notNull(sessionFactory, "Parameter 'sessionFactory' must be not null");
 
       this.holder = holder;
       this.sessionFactory = sessionFactory;
+      this.bound = bound;
     }
 
     /**
@@ -223,7 +343,9 @@ public final class SqlSessionUtils {
      */
     @Override
     public void suspend() {
-      unbindResource(this.sessionFactory);
+      if (this.bound) {
+        unbindResource(this.sessionFactory);
+      }
     }
 
     /**
@@ -231,7 +353,9 @@ public final class SqlSessionUtils {
      */
     @Override
     public void resume() {
-      bindResource(this.sessionFactory, this.holder);
+      if (this.bound) {
+        bindResource(this.sessionFactory, this.holder);
+      }
     }
 
     /**
@@ -242,20 +366,7 @@ public final class SqlSessionUtils {
       // Flush BATCH statements so they are actually executed before the connection is committed.
       // If there is no tx active data will be rolled back so there is no need to flush batches
       if (this.holder.getExecutorType() == ExecutorType.BATCH && isActualTransactionActive()) {
-        try {
-          if (logger.isDebugEnabled()) {
-            logger.debug("Transaction synchronization flushing SqlSession [" + this.holder.getSqlSession() + "]");
-          }
-          this.holder.getSqlSession().flushStatements();
-        } catch (PersistenceException p) {
-          if (this.holder.getPersistenceExceptionTranslator() != null) {
-            DataAccessException translated = this.holder.getPersistenceExceptionTranslator().translateExceptionIfPossible(p);
-            if (translated != null) {
-              throw translated;
-            }
-          }
-          throw p;
-        }
+        flushStatements(this.holder);
       }
     }
 
@@ -292,7 +403,9 @@ public final class SqlSessionUtils {
         }
       } finally {
         if (!holder.isOpen()) {
-          unbindResource(sessionFactory);
+          if (this.bound) {
+            unbindResource(sessionFactory);
+          }
           try {
             if (logger.isDebugEnabled()) {
               logger.debug("Transaction synchronization closing SqlSession [" + this.holder.getSqlSession() + "]");
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * A statement executed through a {@code SqlSessionTemplate}, as reported to
+ * {@code StatementExecutionListener}s.
+ *
+ * @see StatementExecutionListener
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class StatementExecution {
+
+  private final Configuration configuration;
+
+  private final String statement;
+
+  private final String operation;
+
+  private final Object parameter;
+
+  private final long elapsedNanos;
+
+  private final int rows;
+
+  private final RuntimeException failure;
+
+  public StatementExecution(Configuration configuration, String statement, String operation, Object parameter,
+      long elapsedNanos, int rows, RuntimeException failure) {
+    this.configuration = configuration;
+    this.statement = statement;
+    this.operation = operation;
+    this.parameter = parameter;
+    this.elapsedNanos = elapsedNanos;
+    this.rows = rows;
+    this.failure = failure;
+  }
+
+  /**
+   * Returns the MyBatis configuration that holds the mapped statement.
+   */
+  public Configuration getConfiguration() {
+    return this.configuration;
+  }
+
+  /**
+   * Returns the fully qualified id of the mapped statement.
+   */
+  public String getStatement() {
+    return this.statement;
+  }
+
+  /**
+   * Returns the name of the {@code SqlSession} method that ran the statement, like
+   * {@code selectList} or {@code update}.
+   */
+  public String getOperation() {
+    return this.operation;
+  }
+
+  /**
+   * Returns the parameter object of the statement, may be null.
+   */
+  public Object getParameter() {
+    return this.parameter;
+  }
+
+  /**
+   * Returns the wall clock time spent in the call, including getting the
+   * {@code SqlSession} and translating any exception.
+   */
+  public long getElapsedNanos() {
+    return this.elapsedNanos;
+  }
+
+  /**
+   * Returns the number of rows returned by a select or affected by a write, or -1 when
+   * it is not known (i.e. for {@code select} with a {@code ResultHandler} or for
+   * statements queued by a {@code BATCH} executor).
+   */
+  public int getRows() {
+    return this.rows;
+  }
+
+  /**
+   * Returns the exception thrown by the call, already translated, or null if it succeeded.
+   */
+  public RuntimeException getFailure() {
+    return this.failure;
+  }
+
+  public boolean isFailed() {
+    return this.failure != null;
+  }
+
+  @Override
+  public String toString() {
+    return this.operation + "(" + this.statement + ") in " + (this.elapsedNanos / 1000) + " us"
+        + (this.failure == null ? ", rows: " + this.rows : ", failed: " + this.failure);
+  }
+
+}
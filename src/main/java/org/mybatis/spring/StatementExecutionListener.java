@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+/**
+ * Callback notified by {@code SqlSessionTemplate} after each statement it executes.
+ * <p>
+ * Listeners are called on the thread that ran the statement, once it completed or
+ * failed, so implementations must be thread safe and fast. Exceptions thrown by a
+ * listener are logged and ignored.
+ *
+ * @see SqlSessionTemplate#setStatementExecutionListeners(java.util.List)
+ * @since 1.2.0
+ * @version $Id$
+ */
+public interface StatementExecutionListener {
+
+  /**
+   * Called after a statement has been executed.
+   *
+   * @param execution the statement, its timing and its outcome
+   */
+  void statementExecuted(StatementExecution execution);
+
+}
@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+/**
+ * Decides whether an item is written by a statement of a {@link MyBatisCompositeItemWriter}.
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public interface ItemPredicate<T> {
+
+  /**
+   * @param item an item of the chunk being written
+   * @return true if the statement has to be executed for the item
+   */
+  boolean matches(T item);
+
+}
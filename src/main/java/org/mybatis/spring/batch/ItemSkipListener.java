@@ -0,0 +1,36 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+/**
+ * Callback notified of the items a {@link MyBatisBatchItemWriter} left out of a chunk
+ * because writing them failed, while the rest of the chunk was written.
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public interface ItemSkipListener<T> {
+
+  /**
+   * Called once the chunk has been written without the item, before the transaction
+   * commits. If it throws an exception the whole chunk fails.
+   *
+   * @param item the item that could not be written
+   * @param t the cause of the failure
+   */
+  void onSkipInWrite(T item, Throwable t);
+
+}
@@ -15,21 +15,47 @@
  */
 package org.mybatis.spring.batch;
 
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
 import static org.springframework.util.Assert.isTrue;
 import static org.springframework.util.Assert.notNull;
+import static org.springframework.util.ClassUtils.getShortName;
 
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.MyBatisSystemException;
+import org.mybatis.spring.ShardKeyExtractor;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.JdbcUpdateAffectedIncorrectNumberOfRowsException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * {@code ItemWriter} that uses the batching features from
@@ -44,6 +70,50 @@ import org.springframework.dao.InvalidDataAccessResourceUsageException;
  * It is expected that {@link #write(List)} is called inside a transaction. If it is not
  * each statement call will be autocommitted and flushStatements will return no results.<br/>
  *
+ * With {@code itemsPerStatement} set, the items are not passed one by one: the chunk is
+ * split into lists of at most that many items and each list is passed as the parameter
+ * of one statement, usually a multi-row insert built with {@code <foreach>}:
+ *
+ * <pre class="code">
+ * {@code
+ * <insert id="insertEmployees">
+ *   insert into employees (id, name, salary) values
+ *   <foreach item="item" collection="list" separator=",">
+ *     (#{item.id}, #{item.name}, #{item.salary})
+ *   </foreach>
+ * </insert>
+ * }
+ * </pre>
+ *
+ * Each statement is then expected to update at least as many rows as items it got.<br/>
+ *
+ * By default a failing item fails the whole chunk. When an {@link ItemSkipListener} is
+ * set, a non transient failure of the batch is isolated instead: the batch is rolled back
+ * to a JDBC savepoint and written again without the failing items, which are reported to
+ * the listener. The failing items are found with the update counts of the
+ * {@code BatchUpdateException} when the driver provides them and items are passed one
+ * by one, otherwise by writing each half of the failed batch on its own until the
+ * failing items are alone. This requires a Spring transaction on a connection that
+ * supports savepoints, chunks written without one fail.<br/>
+ *
+ * With {@code maxSubBatchSize} set, a chunk is flushed in sub-batches whose size adapts
+ * to the database: it starts at {@code subBatchSize}, grows by {@code minSubBatchSize}
+ * after each full sub-batch flushed within {@code targetFlushMillis} as long as the
+ * throughput does not drop, and is halved, down to {@code minSubBatchSize}, after a
+ * slower flush. The current size and throughput are available through
+ * {@link #getSubBatchSize()} and {@link #getRowsPerSecond()}, i.e. to export them to JMX.
+ * Concurrent writes share and tune the same size.<br/>
+ *
+ * With a {@code partitionKeyExtractor} set, a chunk is split by the hash of the key of
+ * each item into {@code parallelism} partitions, written concurrently, each one in its own
+ * transaction started by the {@code partitionTransactionManager} and so with its own
+ * {@code SqlSession} and connection. This is only meant for steps that do not need the
+ * chunk to be written in a single transaction: the transaction of the step does not
+ * cover the partitions, each partition commits or rolls back on its own, and if any of
+ * them fails a {@link PartitionedWriteException} tells which items were committed.
+ * Partitioning is combined with the options above inside each partition, so an
+ * {@code ItemSkipListener} may then be called from several threads.<br/>
+ *
  * The writer is thread safe after its properties are set (normal singleton
  * behavior), so it can be used to write in multiple concurrent transactions.
  *
@@ -59,6 +129,28 @@ public class MyBatisBatchItemWriter<T> implements ItemWriter<T>, InitializingBea
 
   private boolean assertUpdates = true;
 
+  private int itemsPerStatement;
+
+  private ItemSkipListener<? super T> itemSkipListener;
+
+  private int minSubBatchSize = 10;
+
+  private int maxSubBatchSize;
+
+  private long targetFlushMillis = 500;
+
+  private volatile int subBatchSize;
+
+  private volatile long rowsPerSecond;
+
+  private ShardKeyExtractor partitionKeyExtractor;
+
+  private int parallelism = 4;
+
+  private TaskExecutor partitionTaskExecutor;
+
+  private TransactionTemplate partitionTransactionTemplate;
+
   /**
    * Public setter for the flag that determines whether an assertion is made
    * that all items cause at least one row to be updated.
@@ -69,6 +161,139 @@ public class MyBatisBatchItemWriter<T> implements ItemWriter<T>, InitializingBea
     this.assertUpdates = assertUpdates;
   }
 
+  /**
+   * Public setter for the maximum number of items passed as a list to each statement.
+   * Defaults to 0, each item is the parameter of its own statement.
+   *
+   * @param itemsPerStatement the size of the item lists, or 0 to pass items one by one
+   * @since 1.2.0
+   */
+  public void setItemsPerStatement(int itemsPerStatement) {
+    this.itemsPerStatement = itemsPerStatement;
+  }
+
+  /**
+   * Public setter for the listener of the items skipped because they could not be
+   * written. Setting it enables failure isolation, see the class documentation.
+   *
+   * @param itemSkipListener the listener, or null to fail the whole chunk
+   * @since 1.2.0
+   */
+  public void setItemSkipListener(ItemSkipListener<? super T> itemSkipListener) {
+    this.itemSkipListener = itemSkipListener;
+  }
+
+  /**
+   * Public setter for the smallest sub-batch size, also the step by which the size grows.
+   *
+   * @param minSubBatchSize the smallest number of items per flush. Defaults to 10
+   * @since 1.2.0
+   */
+  public void setMinSubBatchSize(int minSubBatchSize) {
+    this.minSubBatchSize = minSubBatchSize;
+  }
+
+  /**
+   * Public setter for the largest sub-batch size. Setting it enables adaptive sub-batches,
+   * see the class documentation.
+   *
+   * @param maxSubBatchSize the largest number of items per flush, or 0 to flush whole chunks
+   * @since 1.2.0
+   */
+  public void setMaxSubBatchSize(int maxSubBatchSize) {
+    this.maxSubBatchSize = maxSubBatchSize;
+  }
+
+  /**
+   * Public setter for the flush latency above which the sub-batch size is halved.
+   *
+   * @param targetFlushMillis the target latency of a flush. Defaults to 500 ms
+   * @since 1.2.0
+   */
+  public void setTargetFlushMillis(long targetFlushMillis) {
+    this.targetFlushMillis = targetFlushMillis;
+  }
+
+  /**
+   * Public setter for the sub-batch size of the first flush.
+   *
+   * @param subBatchSize the initial number of items per flush. Defaults to {@code minSubBatchSize}
+   * @since 1.2.0
+   */
+  public void setSubBatchSize(int subBatchSize) {
+    this.subBatchSize = subBatchSize;
+  }
+
+  /**
+   * Returns the number of items of the next sub-batch.
+   *
+   * @return the current sub-batch size, or 0 if chunks are flushed whole
+   * @since 1.2.0
+   */
+  public int getSubBatchSize() {
+    return maxSubBatchSize > 0 ? subBatchSize : 0;
+  }
+
+  /**
+   * Returns the throughput of the last full sub-batch.
+   *
+   * @return the items written per second, or 0 before the first sub-batch
+   * @since 1.2.0
+   */
+  public long getRowsPerSecond() {
+    return rowsPerSecond;
+  }
+
+  /**
+   * Public setter for the extractor of the key items are partitioned by. Setting it
+   * enables parallel writes, see the class documentation. It is called with the
+   * statement id and each item.
+   *
+   * @param partitionKeyExtractor the extractor of the partition keys
+   * @since 1.2.0
+   */
+  public void setPartitionKeyExtractor(ShardKeyExtractor partitionKeyExtractor) {
+    this.partitionKeyExtractor = partitionKeyExtractor;
+  }
+
+  /**
+   * Public setter for the number of partitions, which is also the maximum number of
+   * threads and connections writing a chunk at the same time.
+   *
+   * @param parallelism the number of partitions. Defaults to 4
+   * @since 1.2.0
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Sets the {@code TaskExecutor} that writes the partitions besides the calling thread.
+   * Defaults to a {@code SimpleAsyncTaskExecutor} that creates a daemon thread per partition.
+   *
+   * @param partitionTaskExecutor the executor used to write partitions
+   * @since 1.2.0
+   */
+  public void setPartitionTaskExecutor(TaskExecutor partitionTaskExecutor) {
+    this.partitionTaskExecutor = partitionTaskExecutor;
+  }
+
+  /**
+   * Public setter for the transaction manager that starts the transaction of each
+   * partition. Required to write partitions in parallel.
+   *
+   * @param partitionTransactionManager the manager of the transactions of the partitions
+   * @since 1.2.0
+   */
+  public void setPartitionTransactionManager(PlatformTransactionManager partitionTransactionManager) {
+    if (partitionTransactionManager == null) {
+      this.partitionTransactionTemplate = null;
+    } else {
+      this.partitionTransactionTemplate = new TransactionTemplate(partitionTransactionManager);
+      this.partitionTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+  }
+
   /**
    * Public setter for {@link SqlSessionFactory} for injection purposes.
    *
@@ -106,6 +331,30 @@ public class MyBatisBatchItemWriter<T> implements ItemWriter<T>, InitializingBea
     notNull(sqlSessionTemplate, "A SqlSessionFactory or a SqlSessionTemplate is required.");
     isTrue(ExecutorType.BATCH == sqlSessionTemplate.getExecutorType(), "SqlSessionTemplate's executor type must be BATCH");
     notNull(statementId, "A statementId is required.");
+    isTrue(!assertUpdates || sqlSessionTemplate.getBatchFlushThreshold() == 0
+        || sqlSessionTemplate.isKeepAutoFlushedBatchResults(),
+        "SqlSessionTemplate must keep auto flushed batch results to assert updates");
+    isTrue(itemsPerStatement >= 0, "Property 'itemsPerStatement' must not be negative");
+    isTrue(maxSubBatchSize >= 0, "Property 'maxSubBatchSize' must not be negative");
+    if (maxSubBatchSize > 0) {
+      isTrue(minSubBatchSize > 0 && minSubBatchSize <= maxSubBatchSize,
+          "Property 'minSubBatchSize' must be positive and not greater than 'maxSubBatchSize'");
+      isTrue(targetFlushMillis > 0, "Property 'targetFlushMillis' must be positive");
+      if (subBatchSize == 0) {
+        subBatchSize = minSubBatchSize;
+      }
+      isTrue(subBatchSize >= minSubBatchSize && subBatchSize <= maxSubBatchSize,
+          "Property 'subBatchSize' must be between 'minSubBatchSize' and 'maxSubBatchSize'");
+    }
+    if (partitionKeyExtractor != null) {
+      notNull(partitionTransactionTemplate, "A partitionTransactionManager is required to write partitions in parallel");
+      isTrue(parallelism > 0, "Property 'parallelism' must be greater than zero");
+      if (partitionTaskExecutor == null) {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor(getShortName(MyBatisBatchItemWriter.class) + "-");
+        taskExecutor.setDaemon(true);
+        partitionTaskExecutor = taskExecutor;
+      }
+    }
   }
 
   /**
@@ -119,29 +368,385 @@ public class MyBatisBatchItemWriter<T> implements ItemWriter<T>, InitializingBea
         logger.debug("Executing batch with " + items.size() + " items.");
       }
 
+      if (partitionKeyExtractor != null) {
+        writePartitions(items);
+      } else {
+        writeChunk(items);
+      }
+    }
+  }
+
+  private void writeChunk(List<? extends T> items) {
+    if (itemSkipListener != null && !isSynchronizationActive()) {
+      // each statement would autocommit on its own connection, savepoints would undo nothing
+      throw new IllegalTransactionStateException(
+          "Failure isolation with an ItemSkipListener requires an active Spring transaction");
+    }
+    if (itemSkipListener != null || maxSubBatchSize > 0) {
+      new ChunkWrite().write(items);
+    } else {
+      queue(items);
+      List<BatchResult> results = sqlSessionTemplate.flushStatements();
+      if (assertUpdates) {
+        assertUpdates(items, results);
+      }
+    }
+  }
+
+  private void writePartitions(List<? extends T> items) {
+    List<List<T>> partitions = new ArrayList<List<T>>(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      partitions.add(new ArrayList<T>());
+    }
+    for (T item : items) {
+      Object key = partitionKeyExtractor.getShardKey(statementId, item);
+      notNull(key, "No partition key for item [" + item + "]");
+      partitions.get((key.hashCode() & Integer.MAX_VALUE) % parallelism).add(item);
+    }
+    List<List<T>> nonEmptyPartitions = new ArrayList<List<T>>(parallelism);
+    for (List<T> partition : partitions) {
+      if (!partition.isEmpty()) {
+        nonEmptyPartitions.add(partition);
+      }
+    }
+
+    PartitionedWrite execution = new PartitionedWrite(nonEmptyPartitions);
+    for (int i = 1; i < nonEmptyPartitions.size(); i++) {
+      try {
+        partitionTaskExecutor.execute(execution);
+      } catch (TaskRejectedException e) {
+        // the calling thread will write the remaining partitions
+        if (logger.isDebugEnabled()) {
+          logger.debug("Task executor rejected a partition write task: " + e.getMessage());
+        }
+        break;
+      }
+    }
+    execution.run();
+    execution.await();
+  }
+
+  private void queue(List<? extends T> items) {
+    if (itemsPerStatement > 0) {
+      for (int from = 0; from < items.size(); from += itemsPerStatement) {
+        List<T> list = new ArrayList<T>(items.subList(from, Math.min(items.size(), from + itemsPerStatement)));
+        sqlSessionTemplate.update(statementId, list);
+      }
+    } else {
       for (T item : items) {
         sqlSessionTemplate.update(statementId, item);
       }
+    }
+  }
 
-      List<BatchResult> results = sqlSessionTemplate.flushStatements();
+  private static int[] getUpdateCounts(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof BatchUpdateException) {
+        return ((BatchUpdateException) cause).getUpdateCounts();
+      }
+    }
+    return null;
+  }
 
-      if (assertUpdates) {
-        if (results.size() != 1) {
-          throw new InvalidDataAccessResourceUsageException("Batch execution returned invalid results. " +
-              "Expected 1 but number of BatchResult objects returned was " + results.size());
+  private static boolean contains(int[] values, int value) {
+    for (int v : values) {
+      if (v == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Savepoint createSavepoint(Connection connection) {
+    try {
+      return connection.setSavepoint();
+    } catch (SQLException e) {
+      throw new CannotCreateTransactionException("Could not create JDBC savepoint", e);
+    }
+  }
+
+  private static void rollbackToSavepoint(Connection connection, Savepoint savepoint) {
+    try {
+      connection.rollback(savepoint);
+    } catch (SQLException e) {
+      throw new TransactionSystemException("Could not roll back to JDBC savepoint", e);
+    }
+    releaseSavepoint(connection, savepoint);
+  }
+
+  private static void releaseSavepoint(Connection connection, Savepoint savepoint) {
+    try {
+      connection.releaseSavepoint(savepoint);
+    } catch (Throwable e) {
+      // like Spring, ignore drivers that do not support releasing savepoints
+      if (logger.isDebugEnabled()) {
+        logger.debug("Could not explicitly release JDBC savepoint: " + e);
+      }
+    }
+  }
+
+  private synchronized void adaptSubBatchSize(int size, long nanos) {
+    if (nanos > targetFlushMillis * 1000000L) {
+      subBatchSize = Math.max(minSubBatchSize, subBatchSize / 2);
+    } else if (size == subBatchSize) {
+      // only full sub-batches are compared, growing goes on while it does not cost
+      // more throughput than the usual noise
+      long throughput = nanos > 0 ? size * 1000000000L / nanos : Long.MAX_VALUE;
+      if (throughput >= rowsPerSecond - rowsPerSecond / 10) {
+        subBatchSize = Math.min(maxSubBatchSize, subBatchSize + minSubBatchSize);
+      }
+      rowsPerSecond = throughput;
+    }
+  }
+
+  /**
+   * Shared state of the parallel write of a chunk. Each participating thread takes the
+   * next partition and writes it in its own transaction until there is none left.
+   */
+  private final class PartitionedWrite implements Runnable {
+
+    private final List<List<T>> partitions;
+
+    private final RuntimeException[] failures;
+
+    private final AtomicInteger nextPartition = new AtomicInteger();
+
+    private final CountDownLatch completed;
+
+    private PartitionedWrite(List<List<T>> partitions) {
+      this.partitions = partitions;
+      this.failures = new RuntimeException[partitions.size()];
+      this.completed = new CountDownLatch(partitions.size());
+    }
+
+    public void run() {
+      int i;
+      while ((i = nextPartition.getAndIncrement()) < partitions.size()) {
+        final List<T> partition = partitions.get(i);
+        try {
+          partitionTransactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+              writeChunk(partition);
+            }
+          });
+        } catch (RuntimeException e) {
+          failures[i] = e;
+        } finally {
+          completed.countDown();
         }
+      }
+    }
+
+    private void await() {
+      try {
+        completed.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MyBatisSystemException(e);
+      }
+
+      List<T> writtenItems = new ArrayList<T>();
+      List<T> failedItems = new ArrayList<T>();
+      RuntimeException failure = null;
+      int failedPartitions = 0;
+      for (int i = 0; i < partitions.size(); i++) {
+        if (failures[i] == null) {
+          writtenItems.addAll(partitions.get(i));
+        } else {
+          failedItems.addAll(partitions.get(i));
+          if (failure == null) {
+            failure = failures[i];
+          }
+          failedPartitions++;
+        }
+      }
+      if (failure != null) {
+        throw new PartitionedWriteException(failedPartitions + " of " + partitions.size() + " partitions failed, "
+            + writtenItems.size() + " items were committed and " + failedItems.size() + " rolled back",
+            failure, writtenItems, failedItems);
+      }
+    }
 
-        int[] updateCounts = results.get(0).getUpdateCounts();
+  }
 
+  /**
+   * Writes a chunk in sub-batches and/or leaving out the items that fail, with a
+   * savepoint per flush.
+   */
+  private final class ChunkWrite {
+
+    private final Connection connection = itemSkipListener != null ? sqlSessionTemplate.getConnection() : null;
+
+    private final List<T> skippedItems = new ArrayList<T>();
+
+    private final List<Throwable> skipCauses = new ArrayList<Throwable>();
+
+    // the executor returns the results of all the flushes since the last commit
+    private int previousResults = sqlSessionTemplate.flushStatements().size();
+
+    void write(List<? extends T> items) {
+      if (maxSubBatchSize > 0) {
+        int from = 0;
+        while (from < items.size()) {
+          int size = Math.min(subBatchSize, items.size() - from);
+          long start = System.nanoTime();
+          writeOrIsolate(items.subList(from, from + size));
+          adaptSubBatchSize(size, System.nanoTime() - start);
+          from += size;
+        }
+      } else {
+        writeOrIsolate(items);
+      }
+
+      for (int i = 0; i < skippedItems.size(); i++) {
+        itemSkipListener.onSkipInWrite(skippedItems.get(i), skipCauses.get(i));
+      }
+    }
+
+    private void writeOrIsolate(List<? extends T> items) {
+      if (items.isEmpty()) {
+        return;
+      }
+
+      Savepoint savepoint = connection != null ? createSavepoint(connection) : null;
+      // a failure while queueing would leave statements in the executor, so it is not isolated
+      queue(items);
+      List<BatchResult> results;
+      try {
+        results = sqlSessionTemplate.flushStatements();
+      } catch (NonTransientDataAccessException e) {
+        if (savepoint == null) {
+          throw e;
+        }
+        rollbackToSavepoint(connection, savepoint);
+        isolate(items, e);
+        return;
+      }
+      if (savepoint != null) {
+        releaseSavepoint(connection, savepoint);
+      }
+
+      List<BatchResult> newResults = results.subList(Math.min(previousResults, results.size()), results.size());
+      previousResults = results.size();
+      if (assertUpdates) {
+        assertUpdates(items, newResults);
+      }
+    }
+
+    private void isolate(List<? extends T> items, DataAccessException failure) {
+      if (items.size() == 1) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Skipping item that could not be written: [" + items.get(0) + "]");
+        }
+        skippedItems.add(items.get(0));
+        skipCauses.add(failure);
+        return;
+      }
+
+      // update counts only locate items when each item has its own statement; suspects
+      // are written on their own because dynamic SQL may have split the batch
+      int[] updateCounts = itemsPerStatement == 0 ? getUpdateCounts(failure) : null;
+      if (updateCounts != null && updateCounts.length < items.size()) {
+        // the driver stopped at the first failing item
+        int failed = updateCounts.length;
+        writeOrIsolate(items.subList(0, failed));
+        writeOrIsolate(items.subList(failed, failed + 1));
+        writeOrIsolate(items.subList(failed + 1, items.size()));
+      } else if (updateCounts != null && updateCounts.length == items.size()
+          && contains(updateCounts, Statement.EXECUTE_FAILED)) {
+        // the driver went on after the failing items
+        List<T> succeeded = new ArrayList<T>(items.size());
         for (int i = 0; i < updateCounts.length; i++) {
-          int value = updateCounts[i];
-          if (value == 0) {
-            throw new EmptyResultDataAccessException("Item " + i + " of " + updateCounts.length
-                + " did not update any rows: [" + items.get(i) + "]", 1);
+          if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+            writeOrIsolate(items.subList(i, i + 1));
+          } else {
+            succeeded.add(items.get(i));
           }
         }
+        writeOrIsolate(succeeded);
+      } else {
+        int half = items.size() / 2;
+        writeOrIsolate(items.subList(0, half));
+        writeOrIsolate(items.subList(half, items.size()));
+      }
+    }
+
+  }
+
+  private void assertUpdates(List<? extends T> items, List<BatchResult> results) {
+    if (itemsPerStatement > 0) {
+      assertListUpdates(items, results);
+      return;
+    }
+
+    if (results.size() != 1 && !sameStatement(results)) {
+      throw new InvalidDataAccessResourceUsageException("Batch execution returned invalid results. " +
+          "Expected 1 but number of BatchResult objects returned was " + results.size());
+    }
+
+    // a template batchFlushThreshold may split the statement in several results
+    int[] updateCounts = updateCounts(results);
+
+    for (int i = 0; i < updateCounts.length; i++) {
+      int value = updateCounts[i];
+      if (value == 0) {
+        throw new EmptyResultDataAccessException("Item " + i + " of " + updateCounts.length
+            + " did not update any rows: [" + items.get(i) + "]", 1);
+      }
+    }
+  }
+
+  private static boolean sameStatement(List<BatchResult> results) {
+    if (results.isEmpty()) {
+      return false;
+    }
+    for (BatchResult result : results) {
+      if (!result.getSql().equals(results.get(0).getSql())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int[] updateCounts(List<BatchResult> results) {
+    if (results.size() == 1) {
+      return results.get(0).getUpdateCounts();
+    }
+    int length = 0;
+    for (BatchResult result : results) {
+      length += result.getUpdateCounts().length;
+    }
+    int[] updateCounts = new int[length];
+    int offset = 0;
+    for (BatchResult result : results) {
+      System.arraycopy(result.getUpdateCounts(), 0, updateCounts, offset, result.getUpdateCounts().length);
+      offset += result.getUpdateCounts().length;
+    }
+    return updateCounts;
+  }
+
+  private void assertListUpdates(List<? extends T> items, List<BatchResult> results) {
+    int statements = (items.size() + itemsPerStatement - 1) / itemsPerStatement;
+    // full lists share a BatchResult, a shorter last list gets its own one
+    int statement = 0;
+    for (BatchResult result : results) {
+      for (int value : result.getUpdateCounts()) {
+        int from = statement * itemsPerStatement;
+        int size = Math.min(items.size() - from, itemsPerStatement);
+        if (value == 0) {
+          throw new EmptyResultDataAccessException("Statement " + statement + " of " + statements
+              + " did not update any rows for items " + from + " to " + (from + size - 1), size);
+        } else if (value != Statement.SUCCESS_NO_INFO && value < size) {
+          throw new JdbcUpdateAffectedIncorrectNumberOfRowsException(result.getSql(), size, value);
+        }
+        statement++;
       }
     }
+    if (statement != statements) {
+      throw new InvalidDataAccessResourceUsageException("Batch execution returned invalid results. " +
+          "Expected " + statements + " update counts but got " + statement);
+    }
   }
 
 }
@@ -0,0 +1,195 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notEmpty;
+import static org.springframework.util.Assert.notNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+/**
+ * {@code ItemWriter} that writes every item with several MyBatis statements, in a single
+ * batch, i.e. to a header and a detail table.<br/>
+ *
+ * Statements run in the order of {@code statementIds}. All the items of a statement are
+ * queued before moving to the next one, so the {@code BATCH} executor builds one JDBC
+ * batch per statement instead of a new one each time the statement changes. A statement
+ * can be restricted to some items with an {@link ItemPredicate}.<br/>
+ *
+ * When {@code assertUpdates} is set the update counts are checked per statement: each
+ * statement must have one count per item it was executed for, none of them 0.<br/>
+ *
+ * Like {@link MyBatisBatchItemWriter}, it is expected that {@link #write(List)} is called
+ * inside a transaction, and the writer is thread safe after its properties are set.
+ *
+ * @see MyBatisBatchItemWriter
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class MyBatisCompositeItemWriter<T> implements ItemWriter<T>, InitializingBean {
+
+  protected static final Log logger = LogFactory.getLog(MyBatisCompositeItemWriter.class);
+
+  private SqlSessionTemplate sqlSessionTemplate;
+
+  private List<String> statementIds;
+
+  private Map<String, ItemPredicate<? super T>> statementPredicates = new HashMap<String, ItemPredicate<? super T>>();
+
+  private boolean assertUpdates = true;
+
+  /**
+   * Public setter for the flag that determines whether an assertion is made
+   * that all items cause at least one row to be updated by each statement.
+   *
+   * @param assertUpdates the flag to set. Defaults to true;
+   */
+  public void setAssertUpdates(boolean assertUpdates) {
+    this.assertUpdates = assertUpdates;
+  }
+
+  /**
+   * Public setter for {@link SqlSessionFactory} for injection purposes.
+   *
+   * @param sqlSessionFactory sqlSessionFactory
+   */
+  public void setSqlSessionFactory(SqlSessionFactory sqlSessionFactory) {
+    if (sqlSessionTemplate == null) {
+      this.sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    }
+  }
+
+  /**
+   * Public setter for the {@link SqlSessionTemplate}.
+   *
+   * @param sqlSessionTemplate the SqlSessionTemplate
+   */
+  public void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) {
+    this.sqlSessionTemplate = sqlSessionTemplate;
+  }
+
+  /**
+   * Public setter for the ids of the statements every item is written with, in
+   * execution order.
+   *
+   * @param statementIds the ids of the statements
+   */
+  public void setStatementIds(List<String> statementIds) {
+    this.statementIds = statementIds;
+  }
+
+  /**
+   * Public setter for the predicates that restrict statements to some items, keyed by
+   * statement id. Statements without a predicate write all the items.
+   *
+   * @param statementPredicates the predicates keyed by statement id
+   */
+  public void setStatementPredicates(Map<String, ItemPredicate<? super T>> statementPredicates) {
+    notNull(statementPredicates, "Property 'statementPredicates' is required");
+    this.statementPredicates = statementPredicates;
+  }
+
+  /**
+   * Check mandatory properties - there must be an SqlSession and statementIds.
+   */
+  public void afterPropertiesSet() {
+    notNull(sqlSessionTemplate, "A SqlSessionFactory or a SqlSessionTemplate is required.");
+    isTrue(ExecutorType.BATCH == sqlSessionTemplate.getExecutorType(), "SqlSessionTemplate's executor type must be BATCH");
+    notEmpty(statementIds, "At least one statementId is required.");
+    isTrue(statementIds.containsAll(statementPredicates.keySet()), "Predicates must refer to one of the statementIds");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(final List<? extends T> items) {
+
+    if (items.isEmpty()) {
+      return;
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Executing batch with " + items.size() + " items and " + statementIds.size() + " statements.");
+    }
+
+    // the executor returns the results of all the flushes since the last commit
+    int previousResults = sqlSessionTemplate.flushStatements().size();
+
+    List<List<T>> writtenItems = new ArrayList<List<T>>(statementIds.size());
+    for (String statementId : statementIds) {
+      ItemPredicate<? super T> predicate = statementPredicates.get(statementId);
+      List<T> statementItems = new ArrayList<T>(items.size());
+      for (T item : items) {
+        if (predicate == null || predicate.matches(item)) {
+          sqlSessionTemplate.update(statementId, item);
+          statementItems.add(item);
+        }
+      }
+      writtenItems.add(statementItems);
+    }
+
+    List<BatchResult> results = sqlSessionTemplate.flushStatements();
+    results = results.subList(Math.min(previousResults, results.size()), results.size());
+
+    if (assertUpdates) {
+      for (int i = 0; i < statementIds.size(); i++) {
+        assertUpdates(statementIds.get(i), writtenItems.get(i), results);
+      }
+    }
+  }
+
+  private void assertUpdates(String statementId, List<T> statementItems, List<BatchResult> results) {
+    // dynamic SQL can split the executions of a statement in several BatchResults
+    String id = sqlSessionTemplate.getConfiguration().getMappedStatement(statementId).getId();
+    int item = 0;
+    for (BatchResult result : results) {
+      if (!id.equals(result.getMappedStatement().getId())) {
+        continue;
+      }
+      for (int value : result.getUpdateCounts()) {
+        if (item == statementItems.size()) {
+          throw new InvalidDataAccessResourceUsageException("Batch execution returned invalid results for statement ["
+              + statementId + "]. Expected " + statementItems.size() + " update counts but got more");
+        }
+        if (value == 0) {
+          throw new EmptyResultDataAccessException("Item " + item + " of " + statementItems.size()
+              + " did not update any rows with statement [" + statementId + "]: [" + statementItems.get(item) + "]", 1);
+        }
+        item++;
+      }
+    }
+    if (item != statementItems.size()) {
+      throw new InvalidDataAccessResourceUsageException("Batch execution returned invalid results for statement ["
+          + statementId + "]. Expected " + statementItems.size() + " update counts but got " + item);
+    }
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.springframework.util.Assert.notNull;
+import static org.springframework.util.ClassUtils.getShortName;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionCursor;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * {@code org.springframework.batch.item.ItemReader} that reads database records using
+ * a single MyBatis query, streaming its rows through a {@code SqlSessionCursor}.
+ * <p>
+ * Unlike {@link MyBatisPagingItemReader}, the query runs once per step: the cursor is
+ * opened when the reader is opened, on a dedicated {@code SqlSession} and connection,
+ * and rows are mapped one at a time as they are read. The JDBC fetch size is the one set
+ * in the statement's {@code fetchSize} attribute, which also sizes the buffer of rows
+ * mapped ahead. The query gets the {@code parameterValues} as a map parameter.
+ * <p>
+ * The number of items read is saved in the step {@code ExecutionContext}. On restart
+ * the query is run again and that many rows are skipped, so it must return rows in a
+ * stable order.
+ * <p>
+ * The reader is opened outside the chunk transactions, so the cursor does not read
+ * through them. It is not thread safe.
+ *
+ * @see SqlSessionTemplate#selectCursor(String, Object)
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class MyBatisCursorItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> implements InitializingBean {
+
+  private String queryId;
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  private SqlSessionTemplate sqlSessionTemplate;
+
+  private Map<String, Object> parameterValues;
+
+  private SqlSessionCursor<T> cursor;
+
+  public MyBatisCursorItemReader() {
+    setName(getShortName(MyBatisCursorItemReader.class));
+  }
+
+  /**
+   * Public setter for {@link SqlSessionFactory} for injection purposes.
+   *
+   * @param sqlSessionFactory the factory of the session the cursor is opened on
+   */
+  public void setSqlSessionFactory(SqlSessionFactory sqlSessionFactory) {
+    this.sqlSessionFactory = sqlSessionFactory;
+  }
+
+  /**
+   * Public setter for the statement id identifying the statement in the SqlMap
+   * configuration file.
+   *
+   * @param queryId the id for the statement
+   */
+  public void setQueryId(String queryId) {
+    this.queryId = queryId;
+  }
+
+  /**
+   * The parameter values to be used for the query execution.
+   *
+   * @param parameterValues the values keyed by the parameter named used in
+   * the query string.
+   */
+  public void setParameterValues(Map<String, Object> parameterValues) {
+    this.parameterValues = parameterValues;
+  }
+
+  /**
+   * Check mandatory properties.
+   * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+   */
+  public void afterPropertiesSet() throws Exception {
+    notNull(sqlSessionFactory);
+    sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+    notNull(queryId);
+  }
+
+  @Override
+  protected void doOpen() throws Exception {
+    Map<String, Object> parameters = new HashMap<String, Object>();
+    if (parameterValues != null) {
+      parameters.putAll(parameterValues);
+    }
+    cursor = sqlSessionTemplate.selectCursor(queryId, parameters);
+  }
+
+  @Override
+  protected T doRead() throws Exception {
+    return cursor.hasNext() ? cursor.next() : null;
+  }
+
+  @Override
+  protected void jumpToItem(int itemIndex) throws Exception {
+    // skips the rows already read without counting them as items
+    for (int i = 0; i < itemIndex && cursor.hasNext(); i++) {
+      cursor.next();
+    }
+  }
+
+  @Override
+  protected void doClose() throws Exception {
+    if (cursor != null) {
+      cursor.close();
+      cursor = null;
+    }
+  }
+
+}
@@ -15,17 +15,32 @@
  */
 package org.mybatis.spring.batch;
 
+import static org.springframework.util.Assert.isTrue;
 import static org.springframework.util.Assert.notNull;
 import static org.springframework.util.ClassUtils.getShortName;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.MyBatisSystemException;
 import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.database.AbstractPagingItemReader;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
 
 /**
  *
@@ -33,11 +48,45 @@ import org.springframework.batch.item.database.AbstractPagingItemReader;
  * records using MyBatis in a paging fashion.
  *
  * Provided to facilitate the migration from Spring-Batch iBATIS 2 page item readers to MyBatis 3.
+ * <p>
+ * By default each page is read by offset: the query gets the {@code _page},
+ * {@code _pagesize} and {@code _skiprows} parameters. When {@code sortKeys} are set the
+ * reader works in keyset mode: the query also gets a {@code _lastKey} map with the sort
+ * key values of the last item of the previous page (null for the first page), so it can
+ * seek past it instead of skipping rows, and {@code _skiprows} is always 0. The query
+ * must order by those keys and return at most {@code _pagesize} rows:
+ *
+ * <pre class="code">
+ * {@code
+ * <select id="getEmployees" resultType="Employee">
+ *   select * from employees
+ *   <if test="_lastKey != null">where id > #{_lastKey.id}</if>
+ *   order by id
+ *   limit #{_pagesize}
+ * </select>
+ * }
+ * </pre>
+ *
+ * The key of the last item read is saved in the step {@code ExecutionContext}, so a
+ * restarted step resumes right after it.
+ * <p>
+ * A restarted step in offset mode reads again the whole page it stopped in and skips
+ * the items already read in memory. With {@code skipReadRowsOnRestart} set, that page
+ * is instead queried with {@code _skiprows} set to the offset of the first unread item
+ * and {@code _pagesize} to the number of items left in the page, so the query must then
+ * page with those two parameters rather than compute offsets from {@code _page}.
+ * <p>
+ * With {@code prefetchPages} set, the next pages are read on background threads while
+ * the current one is consumed. Prefetched pages are read outside the step transaction,
+ * on their own connections. The saved state only reflects the items actually read, so
+ * restarts are not affected.
  *
  * @since 1.1.0
  */
 public class MyBatisPagingItemReader<T> extends AbstractPagingItemReader<T> {
 
+  private static final String LAST_KEY = "last.key";
+
   private String queryId;
 
   private SqlSessionFactory sqlSessionFactory;
@@ -46,6 +95,22 @@ public class MyBatisPagingItemReader<T> extends AbstractPagingItemReader<T> {
 
   private Map<String, Object> parameterValues;
 
+  private String[] sortKeys;
+
+  private volatile Map<String, Object> lastKey;
+
+  private volatile T lastItem;
+
+  private int prefetchPages;
+
+  private TaskExecutor prefetchTaskExecutor;
+
+  private final LinkedList<Future<List<T>>> prefetchedPages = new LinkedList<Future<List<T>>>();
+
+  private boolean skipReadRowsOnRestart;
+
+  private int restartOffset;
+
   public MyBatisPagingItemReader() {
     setName(getShortName(MyBatisPagingItemReader.class));
   }
@@ -79,6 +144,54 @@ public class MyBatisPagingItemReader<T> extends AbstractPagingItemReader<T> {
     this.parameterValues = parameterValues;
   }
 
+  /**
+   * Sets the properties of the items the query orders by, which turns on keyset
+   * pagination. Their values in the last item of a page are passed to the next query
+   * in the {@code _lastKey} map, keyed by property name.
+   *
+   * @param sortKeys the names of the sort key properties, most significant first
+   * @since 1.2.0
+   */
+  public void setSortKeys(String[] sortKeys) {
+    this.sortKeys = sortKeys;
+  }
+
+  /**
+   * Sets how many pages are read ahead, on background threads, while the current page
+   * is consumed. Defaults to 0, each page is read when the previous one is exhausted.
+   *
+   * @param prefetchPages the number of pages to read ahead
+   * @since 1.2.0
+   */
+  public void setPrefetchPages(int prefetchPages) {
+    this.prefetchPages = prefetchPages;
+  }
+
+  /**
+   * Sets the {@code TaskExecutor} that reads the prefetched pages. Defaults to a
+   * {@code SimpleAsyncTaskExecutor} that creates a daemon thread per page.
+   *
+   * @param prefetchTaskExecutor the executor used to read pages ahead
+   * @since 1.2.0
+   */
+  public void setPrefetchTaskExecutor(TaskExecutor prefetchTaskExecutor) {
+    this.prefetchTaskExecutor = prefetchTaskExecutor;
+  }
+
+  /**
+   * Sets whether a restarted step in offset mode only fetches the unread rows of the page
+   * it stopped in. Defaults to false, the whole page is fetched again and the items
+   * already read are skipped in memory. Only set it when the query pages with
+   * {@code _skiprows} and {@code _pagesize}: the first page after a restart gets a
+   * {@code _skiprows} and a smaller {@code _pagesize} that do not match {@code _page}.
+   *
+   * @param skipReadRowsOnRestart true to fetch only the unread rows of the restart page
+   * @since 1.2.0
+   */
+  public void setSkipReadRowsOnRestart(boolean skipReadRowsOnRestart) {
+    this.skipReadRowsOnRestart = skipReadRowsOnRestart;
+  }
+
   /**
    * Check mandatory properties.
    * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
@@ -88,27 +201,164 @@ public class MyBatisPagingItemReader<T> extends AbstractPagingItemReader<T> {
     notNull(sqlSessionFactory);
     sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
     notNull(queryId);
+    isTrue(prefetchPages >= 0, "Property 'prefetchPages' must not be negative");
+    if (prefetchPages > 0 && prefetchTaskExecutor == null) {
+      SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor(getShortName(MyBatisPagingItemReader.class) + "-");
+      taskExecutor.setDaemon(true);
+      prefetchTaskExecutor = taskExecutor;
+    }
   }
 
   @Override
   protected void doReadPage() {
-    Map<String, Object> parameters = new HashMap<String, Object>();
-    if (parameterValues != null) {
-      parameters.putAll(parameterValues);
+    if (sortKeys != null && results != null && !results.isEmpty()) {
+      lastKey = extractKey(results.get(results.size() - 1));
     }
-    parameters.put("_page", getPage());
-    parameters.put("_pagesize", getPageSize());
-    parameters.put("_skiprows", getPage() * getPageSize());
+    int skippedRows = restartOffset;
+    restartOffset = 0;
+    Future<List<T>> prefetched = prefetchedPages.poll();
+    List<T> page = prefetched == null ? readPage(getPage(), skippedRows, lastKey) : getPrefetchedPage(prefetched);
     if (results == null) {
       results = new CopyOnWriteArrayList<T>();
     } else {
       results.clear();
     }
-    results.addAll(sqlSessionTemplate.<T> selectList(queryId, parameters));
+    if (skippedRows > 0) {
+      // placeholders for the items read before the restart, they are never returned
+      results.addAll(Collections.<T> nCopies(skippedRows, null));
+    }
+    results.addAll(page);
+    if (prefetchPages > 0 && results.size() == getPageSize()) {
+      prefetch(page);
+    }
+  }
+
+  private List<T> readPage(int page, int skippedRows, Map<String, Object> pageLastKey) {
+    Map<String, Object> parameters = new HashMap<String, Object>();
+    if (parameterValues != null) {
+      parameters.putAll(parameterValues);
+    }
+    parameters.put("_page", page);
+    parameters.put("_pagesize", getPageSize() - skippedRows);
+    if (sortKeys == null) {
+      parameters.put("_skiprows", page * getPageSize() + skippedRows);
+    } else {
+      parameters.put("_skiprows", 0);
+      parameters.put("_lastKey", pageLastKey);
+    }
+    return sqlSessionTemplate.<T> selectList(queryId, parameters);
+  }
+
+  private void prefetch(final List<T> currentPage) {
+    while (prefetchedPages.size() < prefetchPages) {
+      final int page = getPage() + 1 + prefetchedPages.size();
+      final Future<List<T>> previousPage = prefetchedPages.isEmpty() ? null : prefetchedPages.getLast();
+      FutureTask<List<T>> task = new FutureTask<List<T>>(new Callable<List<T>>() {
+        public List<T> call() throws Exception {
+          Map<String, Object> pageLastKey = null;
+          if (sortKeys != null) {
+            // the key of a page is only known once the previous one has been read
+            List<T> previousRows = previousPage == null ? currentPage : previousPage.get();
+            if (previousRows.size() < getPageSize()) {
+              return Collections.emptyList();
+            }
+            pageLastKey = extractKey(previousRows.get(previousRows.size() - 1));
+          }
+          return readPage(page, 0, pageLastKey);
+        }
+      });
+      prefetchTaskExecutor.execute(task);
+      prefetchedPages.add(task);
+    }
+  }
+
+  private List<T> getPrefetchedPage(Future<List<T>> prefetched) {
+    try {
+      return prefetched.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MyBatisSystemException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new MyBatisSystemException(cause);
+    }
+  }
+
+  @Override
+  protected T doRead() throws Exception {
+    T item = super.doRead();
+    if (sortKeys != null && item != null) {
+      // the key is only extracted when the state is saved or the next page is read
+      lastItem = item;
+    }
+    return item;
+  }
+
+  @Override
+  public void open(ExecutionContext executionContext) throws ItemStreamException {
+    lastKey = null;
+    lastItem = null;
+    String key = getExecutionContextUserSupport().getKey(LAST_KEY);
+    if (sortKeys != null && isSaveState() && executionContext.containsKey(key)) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> savedKey = (Map<String, Object>) executionContext.get(key);
+      lastKey = savedKey;
+    }
+    super.open(executionContext);
+  }
+
+  @Override
+  public void update(ExecutionContext executionContext) throws ItemStreamException {
+    super.update(executionContext);
+    if (sortKeys != null && isSaveState()) {
+      T item = lastItem;
+      executionContext.put(getExecutionContextUserSupport().getKey(LAST_KEY),
+          item == null ? lastKey : extractKey(item));
+    }
+  }
+
+  @Override
+  protected void jumpToItem(int itemIndex) throws Exception {
+    if (sortKeys != null && lastKey != null) {
+      // the saved key already points past the items read, start a whole page after it
+      super.jumpToItem(itemIndex - itemIndex % getPageSize());
+    } else {
+      super.jumpToItem(itemIndex);
+    }
+  }
+
+  private Map<String, Object> extractKey(T item) {
+    MetaObject metaObject = sqlSessionFactory.getConfiguration().newMetaObject(item);
+    Map<String, Object> key = new LinkedHashMap<String, Object>();
+    for (String sortKey : sortKeys) {
+      key.put(sortKey, metaObject.getValue(sortKey));
+    }
+    return key;
+  }
+
+  @Override
+  protected void doClose() throws Exception {
+    // pages being read ahead are not needed anymore, they finish on their own
+    for (Future<List<T>> prefetched : prefetchedPages) {
+      prefetched.cancel(false);
+    }
+    prefetchedPages.clear();
+    restartOffset = 0;
+    super.doClose();
   }
 
   @Override
   protected void doJumpToPage(int itemIndex) {
+    // the base class already starts at the page of the item and skips the items read
+    // in memory, optionally only fetch the rest of it
+    if (sortKeys == null && skipReadRowsOnRestart) {
+      restartOffset = itemIndex % getPageSize();
+    }
   }
 
 }
@@ -0,0 +1,235 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Splits the key range of a table into partitions for a partitioned Spring Batch step.
+ * <p>
+ * A mapped statement returns the bounds of the keys to process, as the {@code min} and
+ * {@code max} properties of each row (a map or a bean). It gets the {@code _gridSize}
+ * and the {@code parameterValues} as a map parameter. How the rows are turned into
+ * partitions is set with {@link #setSplitRange(boolean)}:
+ * <ul>
+ * <li>By default the statement returns a single row, as a
+ * {@code select min(id) as "min", max(id) as "max"} query does, and its numeric range
+ * is split into {@code gridSize} partitions of the same width.</li>
+ * <li>Otherwise each row is one partition as is, so bucketing queries
+ * (e.g. {@code NTILE(#{_gridSize})} grouped by bucket) can balance partitions
+ * by row count, with keys of any {@code Serializable} type.</li>
+ * </ul>
+ * The bounds of each partition, both inclusive, are put in its {@code ExecutionContext}
+ * under the {@code minValue} and {@code maxValue} keys, so a reader scoped to the step can
+ * get them through late binding, e.g. with {@code #{stepExecutionContext[minValue]}} in its
+ * {@code parameterValues}. No partition is returned when the table is empty.
+ * <p>
+ * This class has the contract of Spring Batch's
+ * {@code org.springframework.batch.core.partition.support.Partitioner}, which is not
+ * implemented here because MyBatis-Spring only depends on Spring Batch infrastructure.
+ * A one line {@code Partitioner} delegating to {@link #partition(int)} plugs it into a
+ * {@code PartitionStep}.
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class MyBatisRangePartitioner implements InitializingBean {
+
+  private static final Log logger = LogFactory.getLog(MyBatisRangePartitioner.class);
+
+  private SqlSessionTemplate sqlSessionTemplate;
+
+  private String queryId;
+
+  private Map<String, Object> parameterValues;
+
+  private String minProperty = "min";
+
+  private String maxProperty = "max";
+
+  private boolean splitRange = true;
+
+  /**
+   * Public setter for {@link SqlSessionFactory} for injection purposes.
+   *
+   * @param sqlSessionFactory the factory of the session the bounds query runs on
+   */
+  public void setSqlSessionFactory(SqlSessionFactory sqlSessionFactory) {
+    if (sqlSessionTemplate == null) {
+      this.sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+    }
+  }
+
+  /**
+   * Public setter for the {@link SqlSessionTemplate}.
+   *
+   * @param sqlSessionTemplate the SqlSessionTemplate
+   */
+  public void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) {
+    this.sqlSessionTemplate = sqlSessionTemplate;
+  }
+
+  /**
+   * Public setter for the id of the statement returning the key bounds.
+   *
+   * @param queryId the id for the statement
+   */
+  public void setQueryId(String queryId) {
+    this.queryId = queryId;
+  }
+
+  /**
+   * The parameter values to be used for the query execution.
+   *
+   * @param parameterValues the values keyed by the parameter named used in
+   * the query string.
+   */
+  public void setParameterValues(Map<String, Object> parameterValues) {
+    this.parameterValues = parameterValues;
+  }
+
+  /**
+   * Sets the property of the result rows holding the lowest key. Defaults to {@code min}.
+   *
+   * @param minProperty the property name
+   */
+  public void setMinProperty(String minProperty) {
+    this.minProperty = minProperty;
+  }
+
+  /**
+   * Sets the property of the result rows holding the highest key. Defaults to {@code max}.
+   *
+   * @param maxProperty the property name
+   */
+  public void setMaxProperty(String maxProperty) {
+    this.maxProperty = maxProperty;
+  }
+
+  /**
+   * Sets whether the statement returns a single numeric range to split into
+   * {@code gridSize} partitions, or one row per partition. Defaults to {@code true}.
+   *
+   * @param splitRange false if each row of the statement is a partition
+   */
+  public void setSplitRange(boolean splitRange) {
+    this.splitRange = splitRange;
+  }
+
+  /**
+   * Check mandatory properties - there must be an SqlSession and a queryId.
+   */
+  public void afterPropertiesSet() {
+    notNull(sqlSessionTemplate, "A SqlSessionFactory or a SqlSessionTemplate is required.");
+    notNull(queryId, "A queryId is required.");
+  }
+
+  /**
+   * Runs the bounds query and creates the {@code ExecutionContext} of each partition,
+   * keyed by partition name.
+   *
+   * @param gridSize the number of partitions to create when the range is split
+   * @return the partitions, in key order
+   */
+  public Map<String, ExecutionContext> partition(int gridSize) {
+    isTrue(gridSize > 0, "Grid size must be positive");
+
+    Map<String, Object> parameters = new HashMap<String, Object>();
+    if (parameterValues != null) {
+      parameters.putAll(parameterValues);
+    }
+    parameters.put("_gridSize", gridSize);
+
+    List<Object> rows = sqlSessionTemplate.selectList(queryId, parameters);
+    Map<String, ExecutionContext> partitions = new LinkedHashMap<String, ExecutionContext>();
+    if (splitRange) {
+      isTrue(rows.size() <= 1, "Statement [" + queryId + "] returned " + rows.size()
+          + " rows, a single range is expected when splitRange is true");
+      // MyBatis maps a row of null bounds, as returned for an empty table, to null
+      if (!rows.isEmpty() && rows.get(0) != null) {
+        MetaObject row = sqlSessionTemplate.getConfiguration().newMetaObject(rows.get(0));
+        Object min = row.getValue(minProperty);
+        Object max = row.getValue(maxProperty);
+        if (min != null && max != null) {
+          split(toLong(min), toLong(max), gridSize, partitions);
+        }
+      }
+    } else {
+      for (Object each : rows) {
+        MetaObject row = sqlSessionTemplate.getConfiguration().newMetaObject(each);
+        addPartition(partitions, row.getValue(minProperty), row.getValue(maxProperty));
+      }
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Created " + partitions.size() + " partitions from statement [" + queryId + "]");
+    }
+    return partitions;
+  }
+
+  private void split(long min, long max, int gridSize, Map<String, ExecutionContext> partitions) {
+    isTrue(min <= max, "Key range [" + min + ", " + max + "] returned by statement [" + queryId
+        + "] has its lower bound above its upper bound");
+    long span = max - min;
+    isTrue(span >= 0, "Key range [" + min + ", " + max + "] returned by statement [" + queryId
+        + "] is too wide to be split, use one row per partition instead");
+    // width rounded up, so there are never more than gridSize partitions
+    long width = span / gridSize + 1;
+    for (long start = min; ; start += width) {
+      // compared as a difference, start + width can overflow next to Long.MAX_VALUE
+      long end = max - start < width ? max : start + width - 1;
+      addPartition(partitions, start, end);
+      if (end == max) {
+        break;
+      }
+    }
+  }
+
+  private void addPartition(Map<String, ExecutionContext> partitions, Object min, Object max) {
+    ExecutionContext context = new ExecutionContext();
+    context.put("minValue", toSerializable(min));
+    context.put("maxValue", toSerializable(max));
+    partitions.put("partition" + partitions.size(), context);
+  }
+
+  private Serializable toSerializable(Object key) {
+    isTrue(key == null || key instanceof Serializable, "Key bounds returned by statement [" + queryId
+        + "] must be Serializable to be stored in the ExecutionContext, found " + (key == null ? null : key.getClass()));
+    return (Serializable) key;
+  }
+
+  private long toLong(Object key) {
+    isTrue(key instanceof Number, "Key bounds returned by statement [" + queryId
+        + "] must be numeric to be split, set splitRange to false to use one row per partition");
+    return ((Number) key).longValue();
+  }
+
+}
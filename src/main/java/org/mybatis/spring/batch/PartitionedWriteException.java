@@ -0,0 +1,59 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import java.util.List;
+
+import org.springframework.dao.NonTransientDataAccessException;
+
+/**
+ * Thrown by a {@link MyBatisBatchItemWriter} writing partitions in parallel when some of
+ * them failed. Each partition has its own transaction: the items of the failed partitions
+ * were rolled back while the written ones are committed, so writing the whole chunk again
+ * would write them twice.
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class PartitionedWriteException extends NonTransientDataAccessException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<?> writtenItems;
+
+  private final List<?> failedItems;
+
+  public PartitionedWriteException(String msg, Throwable cause, List<?> writtenItems, List<?> failedItems) {
+    super(msg, cause);
+    this.writtenItems = writtenItems;
+    this.failedItems = failedItems;
+  }
+
+  /**
+   * Returns the items of the partitions that were committed.
+   */
+  public List<?> getWrittenItems() {
+    return writtenItems;
+  }
+
+  /**
+   * Returns the items of the partitions that were rolled back.
+   */
+  public List<?> getFailedItems() {
+    return failedItems;
+  }
+
+}
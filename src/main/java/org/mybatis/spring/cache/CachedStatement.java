@@ -0,0 +1,115 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.cache;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Cache settings of a select statement cached by {@code CachingSqlSessionTemplate}.
+ *
+ * <pre class="code">
+ * {@code
+ * <bean class="org.mybatis.spring.cache.CachedStatement">
+ *   <property name="statement" value="org.mybatis.spring.sample.mapper.UserMapper.getUser" />
+ *   <property name="timeToLive" value="60000" />
+ *   <property name="maxEntries" value="500" />
+ *   <property name="evictionPolicy" value="LFU" />
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @see CachingSqlSessionTemplate
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class CachedStatement {
+
+  private String statement;
+
+  private long timeToLive;
+
+  private int maxEntries = 1000;
+
+  private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+  public CachedStatement() {
+    // for bean style configuration
+  }
+
+  public CachedStatement(String statement) {
+    setStatement(statement);
+  }
+
+  public String getStatement() {
+    return this.statement;
+  }
+
+  /**
+   * Sets the fully qualified id of the cached select statement.
+   *
+   * @param statement the statement id
+   */
+  public void setStatement(String statement) {
+    notNull(statement, "Property 'statement' is required");
+    this.statement = statement;
+  }
+
+  public long getTimeToLive() {
+    return this.timeToLive;
+  }
+
+  /**
+   * Sets for how long, in milliseconds, a result is served from the cache.
+   * Defaults to 0, entries only leave the cache when evicted or invalidated.
+   *
+   * @param timeToLive the entry time to live in milliseconds
+   */
+  public void setTimeToLive(long timeToLive) {
+    isTrue(timeToLive >= 0, "Property 'timeToLive' must not be negative");
+    this.timeToLive = timeToLive;
+  }
+
+  public int getMaxEntries() {
+    return this.maxEntries;
+  }
+
+  /**
+   * Sets the maximum number of distinct parameter values whose results are kept.
+   * Defaults to 1000.
+   *
+   * @param maxEntries the maximum number of entries
+   */
+  public void setMaxEntries(int maxEntries) {
+    isTrue(maxEntries > 0, "Property 'maxEntries' must be greater than zero");
+    this.maxEntries = maxEntries;
+  }
+
+  public EvictionPolicy getEvictionPolicy() {
+    return this.evictionPolicy;
+  }
+
+  /**
+   * Sets the entry to drop when the cache is full. Defaults to {@code LRU}.
+   *
+   * @param evictionPolicy the eviction policy
+   */
+  public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+    notNull(evictionPolicy, "Property 'evictionPolicy' is required");
+    this.evictionPolicy = evictionPolicy;
+  }
+
+}
@@ -0,0 +1,437 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.cache;
+
+import static org.springframework.transaction.support.TransactionSynchronizationManager.bindResource;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.getResource;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.unbindResource;
+import static org.springframework.util.Assert.notNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.AbstractRoutingSqlSessionTemplate;
+import org.mybatis.spring.SqlSessionCallback;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+
+/**
+ * Thread safe, Spring managed, {@code SqlSession} that caches the results of selected
+ * statements in front of a {@code SqlSessionTemplate}.
+ * <p>
+ * Results of {@code selectOne}, {@code selectList} and {@code selectMap} calls to a
+ * {@code CachedStatement} are kept by statement id, row bounds and the SQL and parameter
+ * values the statement binds for the call, as MyBatis keys its local cache, so parameter
+ * objects need not implement {@code equals()} and may be reused once the call returns.
+ * Entries follow the statement own time to live, maximum number of entries and eviction
+ * policy. Cached results are shared between callers and must not be modified.
+ * <p>
+ * Insert, update and delete statements invalidate their own namespace plus the
+ * namespaces declared for them with {@link #setInvalidationRules(Map)}. Within a Spring
+ * transaction the invalidation is deferred until the transaction commits, and dropped if
+ * it rolls back; meanwhile the transaction bypasses the cache of the namespaces it wrote
+ * to so it reads its own changes.
+ *
+ * <pre class="code">
+ * {@code
+ * <bean id="sqlSession" class="org.mybatis.spring.cache.CachingSqlSessionTemplate">
+ *   <constructor-arg ref="sqlSessionFactory" />
+ *   <property name="cachedStatements">
+ *     <list>
+ *       <bean class="org.mybatis.spring.cache.CachedStatement">
+ *         <property name="statement" value="org.mybatis.spring.sample.mapper.UserMapper.getUser" />
+ *         <property name="timeToLive" value="60000" />
+ *       </bean>
+ *     </list>
+ *   </property>
+ *   <property name="invalidationRules">
+ *     <map>
+ *       <entry key="org.mybatis.spring.sample.mapper.GroupMapper.deleteGroup"
+ *           value="org.mybatis.spring.sample.mapper.UserMapper" />
+ *     </map>
+ *   </property>
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @see CachedStatement
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class CachingSqlSessionTemplate extends AbstractRoutingSqlSessionTemplate {
+
+  private static final Log logger = LogFactory.getLog(CachingSqlSessionTemplate.class);
+
+  private final SqlSessionTemplate sqlSessionTemplate;
+
+  private Map<String, StatementCache> caches = new HashMap<String, StatementCache>();
+
+  private Map<String, List<StatementCache>> cachesByNamespace = new HashMap<String, List<StatementCache>>();
+
+  private Map<String, String[]> invalidationRules = new HashMap<String, String[]>();
+
+  public CachingSqlSessionTemplate(SqlSessionFactory sqlSessionFactory) {
+    this(new SqlSessionTemplate(sqlSessionFactory));
+  }
+
+  public CachingSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) {
+    notNull(sqlSessionTemplate, "Property 'sqlSessionTemplate' is required");
+    this.sqlSessionTemplate = sqlSessionTemplate;
+  }
+
+  /**
+   * Sets the select statements whose results are cached.
+   *
+   * @param cachedStatements the cache settings of each statement
+   */
+  public void setCachedStatements(Collection<CachedStatement> cachedStatements) {
+    notNull(cachedStatements, "Property 'cachedStatements' is required");
+
+    Map<String, StatementCache> caches = new HashMap<String, StatementCache>();
+    Map<String, List<StatementCache>> cachesByNamespace = new HashMap<String, List<StatementCache>>();
+    for (CachedStatement cachedStatement : cachedStatements) {
+      notNull(cachedStatement.getStatement(), "Property 'statement' is required");
+      StatementCache cache = new StatementCache(cachedStatement);
+      caches.put(cachedStatement.getStatement(), cache);
+      List<StatementCache> namespaceCaches = cachesByNamespace.get(cache.getNamespace());
+      if (namespaceCaches == null) {
+        namespaceCaches = new ArrayList<StatementCache>();
+        cachesByNamespace.put(cache.getNamespace(), namespaceCaches);
+      }
+      namespaceCaches.add(cache);
+    }
+    this.caches = caches;
+    this.cachesByNamespace = cachesByNamespace;
+  }
+
+  /**
+   * Sets the namespaces that each insert, update or delete statement invalidates, in
+   * addition to its own one.
+   *
+   * @param invalidationRules namespaces invalidated by each statement id
+   */
+  public void setInvalidationRules(Map<String, String[]> invalidationRules) {
+    notNull(invalidationRules, "Property 'invalidationRules' is required");
+    this.invalidationRules = new HashMap<String, String[]>(invalidationRules);
+  }
+
+  public SqlSessionTemplate getSqlSessionTemplate() {
+    return this.sqlSessionTemplate;
+  }
+
+  /**
+   * Returns the number of calls served from the cache, for all statements.
+   */
+  public long getHitCount() {
+    long hits = 0;
+    for (StatementCache cache : this.caches.values()) {
+      hits += cache.getHitCount();
+    }
+    return hits;
+  }
+
+  /**
+   * Returns the number of calls to cached statements that went to the database.
+   */
+  public long getMissCount() {
+    long misses = 0;
+    for (StatementCache cache : this.caches.values()) {
+      misses += cache.getMissCount();
+    }
+    return misses;
+  }
+
+  /**
+   * Returns the number of calls served from the cache of one statement.
+   */
+  public long getHitCount(String statement) {
+    StatementCache cache = this.caches.get(statement);
+    return cache == null ? 0 : cache.getHitCount();
+  }
+
+  /**
+   * Returns the number of calls to one cached statement that went to the database.
+   */
+  public long getMissCount(String statement) {
+    StatementCache cache = this.caches.get(statement);
+    return cache == null ? 0 : cache.getMissCount();
+  }
+
+  /**
+   * Drops the cached results of the given namespace right away.
+   *
+   * @param namespace a mapper namespace
+   */
+  public void invalidate(String namespace) {
+    List<StatementCache> namespaceCaches = this.cachesByNamespace.get(namespace);
+    if (namespaceCaches != null) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Invalidating cached results of namespace [" + namespace + "]");
+      }
+      for (StatementCache cache : namespaceCaches) {
+        cache.clear();
+      }
+    }
+  }
+
+  /**
+   * Drops all the cached results right away.
+   */
+  public void invalidateAll() {
+    for (StatementCache cache : this.caches.values()) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected SqlSessionTemplate getDefaultSqlSessionTemplate() {
+    return this.sqlSessionTemplate;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected <T> T execute(String statement, Object parameter, SqlSessionCallback<T> action) {
+    T result = action.doInSqlSession(this.sqlSessionTemplate);
+    if (!this.caches.isEmpty() && isWrite(statement)) {
+      invalidateAfterCommit(statement);
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <T> T selectOne(final String statement, final Object parameter) {
+    return query("selectOne", statement, parameter, RowBounds.DEFAULT, null, new SqlSessionCallback<T>() {
+      public T doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<T> selectOne(statement, parameter);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <E> List<E> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+    return query("selectList", statement, parameter, rowBounds, null, new SqlSessionCallback<List<E>>() {
+      public List<E> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<E> selectList(statement, parameter, rowBounds);
+      }
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <K, V> Map<K, V> selectMap(final String statement, final Object parameter, final String mapKey,
+      final RowBounds rowBounds) {
+    return query("selectMap", statement, parameter, rowBounds, mapKey, new SqlSessionCallback<Map<K, V>>() {
+      public Map<K, V> doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T query(String method, String statement, Object parameter, RowBounds rowBounds, String mapKey,
+      SqlSessionCallback<T> action) {
+    StatementCache cache = this.caches.get(statement);
+    Configuration configuration = this.sqlSessionTemplate.getConfiguration();
+    if (cache == null || isInvalidatedInTransaction(cache.getNamespace())
+        || !configuration.hasStatement(statement)) {
+      // unknown statements will make MyBatis fail
+      return action.doInSqlSession(this.sqlSessionTemplate);
+    }
+
+    CacheKey key = cacheKey(configuration.getMappedStatement(statement), parameter, rowBounds);
+    key.update(method);
+    key.update(mapKey);
+
+    StatementCache.Entry entry = cache.get(key);
+    if (entry != null) {
+      return (T) entry.getValue();
+    }
+    long generation = cache.getGeneration();
+    T result = action.doInSqlSession(this.sqlSessionTemplate);
+    cache.put(key, result, generation);
+    return result;
+  }
+
+  /**
+   * Builds the key the same way MyBatis builds its local cache keys: from the values the
+   * statement binds rather than from the parameter object, whose {@code equals()} may not
+   * be implemented and whose state may change after the call.
+   */
+  private static CacheKey cacheKey(MappedStatement ms, Object parameter, RowBounds rowBounds) {
+    BoundSql boundSql = ms.getBoundSql(parameter);
+    CacheKey key = new CacheKey();
+    key.update(ms.getId());
+    key.update(rowBounds.getOffset());
+    key.update(rowBounds.getLimit());
+    key.update(boundSql.getSql());
+    Configuration configuration = ms.getConfiguration();
+    MetaObject metaObject = null;
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      if (parameterMapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      String property = parameterMapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(property)) {
+        value = boundSql.getAdditionalParameter(property);
+      } else if (parameter == null) {
+        value = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameter.getClass())) {
+        value = parameter;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameter);
+        }
+        value = metaObject.getValue(property);
+      }
+      key.update(value);
+    }
+    return key;
+  }
+
+  private boolean isWrite(String statement) {
+    Configuration configuration = this.sqlSessionTemplate.getConfiguration();
+    return configuration.hasStatement(statement)
+        && configuration.getMappedStatement(statement).getSqlCommandType() != SqlCommandType.SELECT;
+  }
+
+  private boolean isInvalidatedInTransaction(String namespace) {
+    if (!isSynchronizationActive()) {
+      return false;
+    }
+    PendingInvalidations pending = (PendingInvalidations) getResource(this);
+    return pending != null && pending.namespaces.contains(namespace);
+  }
+
+  private void invalidateAfterCommit(String statement) {
+    Set<String> namespaces = new HashSet<String>();
+    namespaces.add(statement.substring(0, Math.max(statement.lastIndexOf('.'), 0)));
+    String[] ruleNamespaces = this.invalidationRules.get(statement);
+    if (ruleNamespaces != null) {
+      namespaces.addAll(Arrays.asList(ruleNamespaces));
+    }
+
+    if (isSynchronizationActive()) {
+      PendingInvalidations pending = (PendingInvalidations) getResource(this);
+      if (pending == null) {
+        pending = new PendingInvalidations();
+        bindResource(this, pending);
+        registerSynchronization(new CacheSynchronization(pending));
+      }
+      pending.namespaces.addAll(namespaces);
+    } else {
+      for (String namespace : namespaces) {
+        invalidate(namespace);
+      }
+    }
+  }
+
+  /**
+   * Namespaces written by the current transaction.
+   */
+  private static final class PendingInvalidations {
+
+    private final Set<String> namespaces = new HashSet<String>();
+
+  }
+
+  /**
+   * Invalidates the namespaces written by a transaction once it commits.
+   */
+  private final class CacheSynchronization extends TransactionSynchronizationAdapter {
+
+    private final PendingInvalidations pending;
+
+    private CacheSynchronization(PendingInvalidations pending) {
+      this.pending = pending;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getOrder() {
+      // order right before any Connection synchronization, like SqlSessionSynchronization
+      return DataSourceUtils.CONNECTION_SYNCHRONIZATION_ORDER - 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void suspend() {
+      unbindResource(CachingSqlSessionTemplate.this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resume() {
+      bindResource(CachingSqlSessionTemplate.this, this.pending);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterCompletion(int status) {
+      unbindResource(CachingSqlSessionTemplate.this);
+      if (status == STATUS_COMMITTED) {
+        for (String namespace : this.pending.namespaces) {
+          invalidate(namespace);
+        }
+      }
+    }
+
+  }
+
+}
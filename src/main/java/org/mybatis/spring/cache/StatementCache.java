@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a single cached statement, keyed by call. All the entries are dropped at
+ * once when the statement namespace is invalidated.
+ * <p>
+ * Each invalidation bumps a generation counter. Results read while an invalidation
+ * happened are not stored, so a slow reader cannot put back data older than a
+ * concurrent commit.
+ *
+ * @version $Id$
+ */
+final class StatementCache {
+
+  private final String namespace;
+
+  private final long timeToLive;
+
+  private final int maxEntries;
+
+  private final EvictionPolicy evictionPolicy;
+
+  private final LinkedHashMap<Object, Entry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private long generation;
+
+  StatementCache(CachedStatement settings) {
+    String statement = settings.getStatement();
+    this.namespace = statement.substring(0, Math.max(statement.lastIndexOf('.'), 0));
+    this.timeToLive = settings.getTimeToLive();
+    this.maxEntries = settings.getMaxEntries();
+    this.evictionPolicy = settings.getEvictionPolicy();
+    // access ordered for LRU, insertion ordered for LFU so ties evict the oldest entry
+    this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, this.evictionPolicy == EvictionPolicy.LRU);
+  }
+
+  String getNamespace() {
+    return this.namespace;
+  }
+
+  long getHitCount() {
+    return this.hits.get();
+  }
+
+  long getMissCount() {
+    return this.misses.get();
+  }
+
+  /**
+   * Returns the entry of the key, or null on a miss. A cached null result is returned
+   * as an entry holding null.
+   */
+  synchronized Entry get(Object key) {
+    Entry entry = this.entries.get(key);
+    if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+      this.entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      this.misses.incrementAndGet();
+      return null;
+    }
+    entry.uses++;
+    this.hits.incrementAndGet();
+    return entry;
+  }
+
+  synchronized long getGeneration() {
+    return this.generation;
+  }
+
+  /**
+   * Stores the value unless the cache was invalidated after the given generation was read.
+   */
+  synchronized void put(Object key, Object value, long readGeneration) {
+    if (readGeneration != this.generation) {
+      return;
+    }
+    if (this.entries.size() >= this.maxEntries && !this.entries.containsKey(key)) {
+      evict();
+    }
+    long expiresAt = this.timeToLive > 0 ? System.currentTimeMillis() + this.timeToLive : Long.MAX_VALUE;
+    this.entries.put(key, new Entry(value, expiresAt));
+  }
+
+  synchronized void clear() {
+    this.entries.clear();
+    this.generation++;
+  }
+
+  synchronized int size() {
+    return this.entries.size();
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Object, Entry>> iterator = this.entries.entrySet().iterator();
+    if (this.evictionPolicy == EvictionPolicy.LRU) {
+      iterator.next();
+      iterator.remove();
+      return;
+    }
+
+    Object leastUsed = null;
+    long fewestUses = Long.MAX_VALUE;
+    while (iterator.hasNext()) {
+      Map.Entry<Object, Entry> candidate = iterator.next();
+      if (candidate.getValue().uses < fewestUses) {
+        fewestUses = candidate.getValue().uses;
+        leastUsed = candidate.getKey();
+      }
+    }
+    this.entries.remove(leastUsed);
+  }
+
+  static final class Entry {
+
+    private final Object value;
+
+    private final long expiresAt;
+
+    private long uses;
+
+    private Entry(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    Object getValue() {
+      return this.value;
+    }
+
+    private boolean isExpired(long now) {
+      return now >= this.expiresAt;
+    }
+
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in microseconds.
+ * <p>
+ * Values below 16 have their own bucket, larger ones are counted in 8 buckets per
+ * power of two, so percentiles are reported with a relative error under 12.5%, using
+ * a fixed amount of memory. Recording is a couple of atomic increments; readers see
+ * a consistent enough snapshot for monitoring purposes.
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class LatencyHistogram {
+
+  private static final int LINEAR_BUCKETS = 16;
+
+  private static final int SUB_BUCKET_BITS = 3;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // 4 is the exponent of the first power of two past the linear buckets
+  private static final int BUCKETS = LINEAR_BUCKETS + (64 - 4) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records one latency.
+   *
+   * @param micros the latency in microseconds, negative values count as 0
+   */
+  public void record(long micros) {
+    long value = Math.max(micros, 0);
+    this.counts.incrementAndGet(bucketOf(value));
+    long currentMax;
+    while (value > (currentMax = this.max.get()) && !this.max.compareAndSet(currentMax, value)) {
+      // retry, another thread raised the max meanwhile
+    }
+  }
+
+  /**
+   * Returns the number of recorded latencies.
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += this.counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the largest recorded latency in microseconds, exact.
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Returns an upper bound of the latency under which the given ratio of calls completed.
+   *
+   * @param ratio the percentile between 0 and 1, i.e. 0.99
+   * @return the percentile in microseconds, or 0 if nothing was recorded
+   */
+  public long getPercentile(double ratio) {
+    long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = this.counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank = Math.max((long) Math.ceil(ratio * count), 1);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Forgets all recorded latencies.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      this.counts.set(i, 0);
+    }
+    this.max.set(0);
+  }
+
+  static int bucketOf(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundOf(int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+    int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+    if (exponent == 63 && subBucket == SUB_BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+}
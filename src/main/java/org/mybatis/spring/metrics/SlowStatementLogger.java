@@ -0,0 +1,353 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.property.PropertyTokenizer;
+import org.apache.ibatis.session.Configuration;
+import org.mybatis.spring.StatementExecution;
+import org.mybatis.spring.StatementExecutionListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * {@code StatementExecutionListener} that logs the statements slower than a threshold,
+ * with their bound SQL and parameter values, and optionally their execution plan.
+ * <p>
+ * Values of parameters whose property name matches one of the masking patterns are
+ * logged as {@code ****}. When an explain prefix is set, i.e. {@code EXPLAIN PLAN FOR }
+ * for HSQLDB or {@code EXPLAIN } for MySQL and PostgreSQL, the plan of the slow SQL is
+ * read on a separate connection, outside of any Spring transaction, with the statement
+ * parameter values bound when the explain command declares parameters. Plans are read
+ * in the background, one at a time, so the thread that ran the slow statement never
+ * waits for a second connection. At most {@code maxExplainsPerMinute} plans are read per
+ * minute, so a burst of slow statements does not add even more load to the database.
+ *
+ * <pre class="code">
+ * {@code
+ * <bean id="slowStatementLogger" class="org.mybatis.spring.metrics.SlowStatementLogger">
+ *   <property name="thresholdMillis" value="500" />
+ *   <property name="maskedParameters" value="(?i).*password.*,(?i).*cardNumber.*" />
+ *   <property name="explainPrefix" value="EXPLAIN " />
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @see org.mybatis.spring.SqlSessionTemplate#setStatementExecutionListeners(java.util.List)
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class SlowStatementLogger implements StatementExecutionListener {
+
+  private static final Log logger = LogFactory.getLog(SlowStatementLogger.class);
+
+  private static final String MASK = "****";
+
+  private static final long MINUTE_NANOS = 60L * 1000 * 1000 * 1000;
+
+  private static final int DEFAULT_EXPLAIN_QUEUE_SIZE = 10;
+
+  private long thresholdNanos = 1000L * 1000 * 1000;
+
+  private List<Pattern> maskedParameters = new ArrayList<Pattern>();
+
+  private String explainPrefix;
+
+  private DataSource explainDataSource;
+
+  private TaskExecutor explainTaskExecutor;
+
+  private int maxExplainsPerMinute = 10;
+
+  private final AtomicLong explainWindowStart = new AtomicLong(System.nanoTime());
+
+  private final AtomicInteger explainsInWindow = new AtomicInteger();
+
+  private final AtomicLong slowStatementCount = new AtomicLong();
+
+  /**
+   * Sets the elapsed time from which a statement is logged. Defaults to 1000 ms.
+   *
+   * @param thresholdMillis the threshold in milliseconds
+   */
+  public void setThresholdMillis(long thresholdMillis) {
+    isTrue(thresholdMillis >= 0, "Property 'thresholdMillis' must not be negative");
+    this.thresholdNanos = thresholdMillis * 1000 * 1000;
+  }
+
+  /**
+   * Sets the regular expressions matched against parameter property names, like
+   * {@code password} or {@code user.creditCard}, whose values must not be logged.
+   *
+   * @param maskedParameters the masking patterns
+   */
+  public void setMaskedParameters(Collection<String> maskedParameters) {
+    notNull(maskedParameters, "Property 'maskedParameters' is required");
+    List<Pattern> patterns = new ArrayList<Pattern>(maskedParameters.size());
+    for (String maskedParameter : maskedParameters) {
+      patterns.add(Pattern.compile(maskedParameter));
+    }
+    this.maskedParameters = patterns;
+  }
+
+  /**
+   * Sets the text put before the slow SQL to get its execution plan from the database.
+   * Defaults to null, no plan is read.
+   *
+   * @param explainPrefix the dialect explain command, like {@code EXPLAIN PLAN FOR }
+   */
+  public void setExplainPrefix(String explainPrefix) {
+    this.explainPrefix = explainPrefix;
+  }
+
+  /**
+   * Sets the {@code DataSource} the plans are read from. Defaults to the one of the
+   * statement {@code Environment}.
+   *
+   * @param explainDataSource the data source for explain connections
+   */
+  public void setExplainDataSource(DataSource explainDataSource) {
+    this.explainDataSource = explainDataSource;
+  }
+
+  /**
+   * Sets the executor that reads the plans. Defaults to a single daemon thread, created
+   * the first time a plan is read, that queues up to 10 plans and drops the following ones.
+   * <p>
+   * An executor that runs tasks on the calling thread makes it take a second connection
+   * while it may still hold the one of its transaction, which can exhaust the pool.
+   *
+   * @param explainTaskExecutor the executor of explain tasks
+   */
+  public void setExplainTaskExecutor(TaskExecutor explainTaskExecutor) {
+    notNull(explainTaskExecutor, "Property 'explainTaskExecutor' is required");
+    synchronized (this) {
+      this.explainTaskExecutor = explainTaskExecutor;
+    }
+  }
+
+  private synchronized TaskExecutor getExplainTaskExecutor() {
+    if (this.explainTaskExecutor == null) {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("mybatis-explain-");
+      threadFactory.setDaemon(true);
+      this.explainTaskExecutor = new ConcurrentTaskExecutor(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(DEFAULT_EXPLAIN_QUEUE_SIZE), threadFactory));
+    }
+    return this.explainTaskExecutor;
+  }
+
+  /**
+   * Sets the maximum number of plans read per minute. Defaults to 10.
+   *
+   * @param maxExplainsPerMinute the explain rate limit
+   */
+  public void setMaxExplainsPerMinute(int maxExplainsPerMinute) {
+    isTrue(maxExplainsPerMinute >= 0, "Property 'maxExplainsPerMinute' must not be negative");
+    this.maxExplainsPerMinute = maxExplainsPerMinute;
+  }
+
+  /**
+   * Returns the number of slow statements seen so far.
+   */
+  public long getSlowStatementCount() {
+    return this.slowStatementCount.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void statementExecuted(StatementExecution execution) {
+    if (execution.getElapsedNanos() < this.thresholdNanos) {
+      return;
+    }
+    this.slowStatementCount.incrementAndGet();
+
+    Configuration configuration = execution.getConfiguration();
+    MappedStatement mappedStatement = null;
+    BoundSql boundSql = null;
+    StringBuilder message = new StringBuilder("Slow statement [").append(execution.getStatement())
+        .append("] took ").append(execution.getElapsedNanos() / (1000 * 1000)).append(" ms");
+    try {
+      mappedStatement = configuration.getMappedStatement(execution.getStatement());
+      boundSql = mappedStatement.getBoundSql(execution.getParameter());
+      message.append("\n  SQL: ").append(boundSql.getSql().replaceAll("\\s+", " ").trim());
+      message.append("\n  Parameters: ").append(describeParameters(configuration, boundSql));
+    } catch (RuntimeException e) {
+      message.append("\n  SQL not available: ").append(e);
+    }
+    log(message.toString());
+
+    if (boundSql != null && this.explainPrefix != null && tryAcquireExplain()) {
+      final String sql = this.explainPrefix + boundSql.getSql();
+      final String statement = execution.getStatement();
+      // binds the same values as the statement when the explain command takes them,
+      // like MySQL and PostgreSQL EXPLAIN, but not HSQLDB EXPLAIN PLAN FOR
+      final ParameterHandler parameterHandler = configuration.newParameterHandler(
+          mappedStatement, execution.getParameter(), boundSql);
+      final DataSource dataSource = this.explainDataSource != null
+          ? this.explainDataSource : configuration.getEnvironment().getDataSource();
+      try {
+        getExplainTaskExecutor().execute(new Runnable() {
+          public void run() {
+            explain(statement, dataSource, sql, parameterHandler);
+          }
+        });
+      } catch (TaskRejectedException e) {
+        logger.debug("Explain of slow statement [" + statement + "] rejected: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Writes a slow statement report. Logs at warn level by default.
+   *
+   * @param message the report
+   */
+  protected void log(String message) {
+    logger.warn(message);
+  }
+
+  private String describeParameters(Configuration configuration, BoundSql boundSql) {
+    List<String> values = new ArrayList<String>();
+    Object parameterObject = boundSql.getParameterObject();
+    MetaObject metaObject = null;
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      String property = parameterMapping.getProperty();
+      Object value;
+      PropertyTokenizer prop = new PropertyTokenizer(property);
+      // same lookup as MyBatis DefaultParameterHandler
+      if (boundSql.hasAdditionalParameter(property)) {
+        value = boundSql.getAdditionalParameter(property);
+      } else if (boundSql.hasAdditionalParameter(prop.getName())) {
+        value = boundSql.getAdditionalParameter(prop.getName());
+        if (value != null) {
+          value = configuration.newMetaObject(value).getValue(property.substring(prop.getName().length()));
+        }
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        value = metaObject.getValue(property);
+      }
+      values.add(property + "=" + (isMasked(property) ? MASK : String.valueOf(value)));
+    }
+    return values.toString();
+  }
+
+  private boolean isMasked(String property) {
+    for (Pattern pattern : this.maskedParameters) {
+      if (pattern.matcher(property).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean tryAcquireExplain() {
+    long now = System.nanoTime();
+    long windowStart = this.explainWindowStart.get();
+    if (now - windowStart >= MINUTE_NANOS && this.explainWindowStart.compareAndSet(windowStart, now)) {
+      this.explainsInWindow.set(0);
+    }
+    if (this.explainsInWindow.incrementAndGet() > this.maxExplainsPerMinute) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Explain rate limit of " + this.maxExplainsPerMinute + " per minute reached");
+      }
+      return false;
+    }
+    return true;
+  }
+
+  private void explain(String statement, DataSource dataSource, String sql, ParameterHandler parameterHandler) {
+    Connection connection = null;
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+    String plan = null;
+    try {
+      // a plain connection, never the one of the current transaction
+      connection = dataSource.getConnection();
+      ps = connection.prepareStatement(sql);
+      if (hasParameters(ps)) {
+        parameterHandler.setParameters(ps);
+      }
+      rs = ps.executeQuery();
+      int columns = rs.getMetaData().getColumnCount();
+      StringBuilder builder = new StringBuilder("Plan of slow statement [").append(statement).append("]:");
+      while (rs.next()) {
+        builder.append("\n ");
+        for (int i = 1; i <= columns; i++) {
+          builder.append(' ').append(rs.getString(i));
+        }
+      }
+      plan = builder.toString();
+    } catch (SQLException e) {
+      logger.warn("Could not explain slow statement [" + statement + "]: " + e);
+    } catch (RuntimeException e) {
+      // i.e. a TypeException binding the parameters
+      logger.warn("Could not explain slow statement [" + statement + "]: " + e);
+    } finally {
+      JdbcUtils.closeResultSet(rs);
+      JdbcUtils.closeStatement(ps);
+      JdbcUtils.closeConnection(connection);
+    }
+    // logged once the connection is back, slow appenders do not hold it
+    if (plan != null) {
+      log(plan);
+    }
+  }
+
+  private static boolean hasParameters(PreparedStatement ps) {
+    try {
+      return ps.getParameterMetaData().getParameterCount() > 0;
+    } catch (SQLException e) {
+      // the driver cannot tell, the statement most likely needs its values
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the calls to one mapped statement through one {@code SqlSession} method.
+ *
+ * @see StatementMetricsListener
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class StatementMetrics {
+
+  private final String statement;
+
+  private final String operation;
+
+  private final LatencyHistogram latencies = new LatencyHistogram();
+
+  private final AtomicLong errors = new AtomicLong();
+
+  private final AtomicLong rows = new AtomicLong();
+
+  public StatementMetrics(String statement, String operation) {
+    this.statement = statement;
+    this.operation = operation;
+  }
+
+  void record(long elapsedNanos, int rows, boolean failed) {
+    this.latencies.record(elapsedNanos / 1000);
+    if (failed) {
+      this.errors.incrementAndGet();
+    } else if (rows > 0) {
+      this.rows.addAndGet(rows);
+    }
+  }
+
+  public String getStatement() {
+    return this.statement;
+  }
+
+  public String getOperation() {
+    return this.operation;
+  }
+
+  public long getCallCount() {
+    return this.latencies.getCount();
+  }
+
+  public long getErrorCount() {
+    return this.errors.get();
+  }
+
+  /**
+   * Returns the total number of rows returned or affected by the successful calls.
+   */
+  public long getRowCount() {
+    return this.rows.get();
+  }
+
+  /**
+   * Returns the median latency in microseconds.
+   */
+  public long getP50() {
+    return this.latencies.getPercentile(0.5);
+  }
+
+  /**
+   * Returns the 99th percentile latency in microseconds.
+   */
+  public long getP99() {
+    return this.latencies.getPercentile(0.99);
+  }
+
+  /**
+   * Returns the largest latency in microseconds.
+   */
+  public long getMax() {
+    return this.latencies.getMax();
+  }
+
+  public LatencyHistogram getLatencies() {
+    return this.latencies;
+  }
+
+  void reset() {
+    this.latencies.reset();
+    this.errors.set(0);
+    this.rows.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return this.statement + " " + this.operation
+        + " calls=" + getCallCount()
+        + " errors=" + getErrorCount()
+        + " rows=" + getRowCount()
+        + " p50=" + getP50() + "us"
+        + " p99=" + getP99() + "us"
+        + " max=" + getMax() + "us";
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.mybatis.spring.StatementExecution;
+import org.mybatis.spring.StatementExecutionListener;
+
+/**
+ * {@code StatementExecutionListener} that keeps, per mapped statement and
+ * {@code SqlSession} method, a latency histogram and the call, error and row counts.
+ * <p>
+ * Recording is lock free. The listener is a standard MBean, so it can be registered
+ * as is by Spring's {@code MBeanExporter}.
+ *
+ * <pre class="code">
+ * {@code
+ * <bean id="statementMetrics" class="org.mybatis.spring.metrics.StatementMetricsListener" />
+ *
+ * <bean id="sqlSession" class="org.mybatis.spring.SqlSessionTemplate">
+ *   <constructor-arg ref="sqlSessionFactory" />
+ *   <property name="statementExecutionListeners">
+ *     <list>
+ *       <ref bean="statementMetrics" />
+ *     </list>
+ *   </property>
+ * </bean>
+ *
+ * <bean class="org.springframework.jmx.export.MBeanExporter">
+ *   <property name="beans">
+ *     <map>
+ *       <entry key="org.mybatis:type=StatementMetrics" value-ref="statementMetrics" />
+ *     </map>
+ *   </property>
+ * </bean>
+ * }
+ * </pre>
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public class StatementMetricsListener implements StatementExecutionListener, StatementMetricsListenerMBean {
+
+  private final ConcurrentMap<String, StatementMetrics> metrics = new ConcurrentHashMap<String, StatementMetrics>();
+
+  /**
+   * {@inheritDoc}
+   */
+  public void statementExecuted(StatementExecution execution) {
+    String key = keyOf(execution.getStatement(), execution.getOperation());
+    StatementMetrics statementMetrics = this.metrics.get(key);
+    if (statementMetrics == null) {
+      statementMetrics = new StatementMetrics(execution.getStatement(), execution.getOperation());
+      StatementMetrics existing = this.metrics.putIfAbsent(key, statementMetrics);
+      if (existing != null) {
+        statementMetrics = existing;
+      }
+    }
+    statementMetrics.record(execution.getElapsedNanos(), execution.getRows(), execution.isFailed());
+  }
+
+  /**
+   * Returns the metrics of a statement called through a {@code SqlSession} method.
+   *
+   * @param statement the fully qualified statement id
+   * @param operation the {@code SqlSession} method name, like {@code selectList}
+   * @return the metrics or null if it was never called
+   */
+  public StatementMetrics getMetrics(String statement, String operation) {
+    return this.metrics.get(keyOf(statement, operation));
+  }
+
+  public Collection<StatementMetrics> getAllMetrics() {
+    return Collections.unmodifiableCollection(this.metrics.values());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String[] getStatementMetrics() {
+    List<String> lines = new ArrayList<String>();
+    for (StatementMetrics statementMetrics : this.metrics.values()) {
+      lines.add(statementMetrics.toString());
+    }
+    Collections.sort(lines);
+    return lines.toArray(new String[lines.size()]);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public long getCallCount(String statement, String operation) {
+    StatementMetrics statementMetrics = getMetrics(statement, operation);
+    return statementMetrics == null ? 0 : statementMetrics.getCallCount();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public long getErrorCount(String statement, String operation) {
+    StatementMetrics statementMetrics = getMetrics(statement, operation);
+    return statementMetrics == null ? 0 : statementMetrics.getErrorCount();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public long getRowCount(String statement, String operation) {
+    StatementMetrics statementMetrics = getMetrics(statement, operation);
+    return statementMetrics == null ? 0 : statementMetrics.getRowCount();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public long getP50(String statement, String operation) {
+    StatementMetrics statementMetrics = getMetrics(statement, operation);
+    return statementMetrics == null ? 0 : statementMetrics.getP50();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public long getP99(String statement, String operation) {
+    StatementMetrics statementMetrics = getMetrics(statement, operation);
+    return statementMetrics == null ? 0 : statementMetrics.getP99();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public long getMax(String statement, String operation) {
+    StatementMetrics statementMetrics = getMetrics(statement, operation);
+    return statementMetrics == null ? 0 : statementMetrics.getMax();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void reset() {
+    for (StatementMetrics statementMetrics : this.metrics.values()) {
+      statementMetrics.reset();
+    }
+  }
+
+  private static String keyOf(String statement, String operation) {
+    return statement + '#' + operation;
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+/**
+ * JMX management interface of {@code StatementMetricsListener}.
+ *
+ * @since 1.2.0
+ * @version $Id$
+ */
+public interface StatementMetricsListenerMBean {
+
+  /**
+   * Returns one line per statement and operation with its call, error and row counts
+   * and its p50, p99 and max latencies in microseconds.
+   */
+  String[] getStatementMetrics();
+
+  long getCallCount(String statement, String operation);
+
+  long getErrorCount(String statement, String operation);
+
+  long getRowCount(String statement, String operation);
+
+  long getP50(String statement, String operation);
+
+  long getP99(String statement, String operation);
+
+  long getMax(String statement, String operation);
+
+  /**
+   * Clears all the collected metrics.
+   */
+  void reset();
+
+}
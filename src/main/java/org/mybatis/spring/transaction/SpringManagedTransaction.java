@@ -120,6 +120,8 @@ public class SpringManagedTransaction implements Transaction {
    */
   public void close() throws SQLException {
     releaseConnection(this.connection, this.dataSource);
+    // a later call to getConnection() will open a new connection
+    this.connection = null;
   }
 
 }
@@ -0,0 +1,107 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+/**
+ * Base of the tests running against an embedded HSQLDB database filled with the
+ * {@code employees} fixtures. Each test class gets its own database, shut down once
+ * its tests are done, and an {@code SqlSessionFactory} over {@code EmployeeMapper.xml}.
+ * <p>
+ * Subclasses using other fixtures hide {@link #setupDatabase()} with a static method
+ * of the same name, so JUnit runs theirs instead.
+ *
+ * @version $Id$
+ */
+public abstract class AbstractEmbeddedDatabaseTest {
+
+  protected static final String EMPLOYEE_MAPPER = "org/mybatis/spring/EmployeeMapper.xml";
+
+  private static final AtomicInteger databaseCount = new AtomicInteger();
+
+  private static final List<EmbeddedDatabase> databases = new ArrayList<EmbeddedDatabase>();
+
+  protected static EmbeddedDatabase dataSource;
+
+  protected static SqlSessionFactory sqlSessionFactory;
+
+  protected static DataSourceTransactionManager txManager;
+
+  @BeforeClass
+  public static void setupDatabase() throws Exception {
+    setupDatabase("org/mybatis/spring/db", EMPLOYEE_MAPPER);
+  }
+
+  @AfterClass
+  public static void shutdownDatabases() {
+    for (EmbeddedDatabase database : databases) {
+      database.shutdown();
+    }
+    databases.clear();
+  }
+
+  /**
+   * Creates the database, factory and transaction manager of the test class.
+   *
+   * @param scriptLocation folder of the {@code database-schema.sql} and {@code database-test-data.sql} scripts
+   * @param mapperLocations the mapper files of the factory
+   */
+  protected static void setupDatabase(String scriptLocation, String... mapperLocations) throws Exception {
+    dataSource = createDatabase(scriptLocation);
+    sqlSessionFactory = createSqlSessionFactory(dataSource, mapperLocations);
+    txManager = new DataSourceTransactionManager(dataSource);
+  }
+
+  /**
+   * Creates a new database, i.e. a replica or a shard, also shut down after the test class.
+   */
+  protected static EmbeddedDatabase createDatabase(String scriptLocation) {
+    EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+        .setName("embeddedDatabaseTest" + databaseCount.incrementAndGet())
+        .addScript(scriptLocation + "/database-schema.sql")
+        .addScript(scriptLocation + "/database-test-data.sql")
+        .build();
+    databases.add(database);
+    return database;
+  }
+
+  protected static SqlSessionFactory createSqlSessionFactory(DataSource dataSource, String... mapperLocations)
+      throws Exception {
+    Resource[] mappers = new Resource[mapperLocations.length];
+    for (int i = 0; i < mapperLocations.length; i++) {
+      mappers[i] = new ClassPathResource(mapperLocations[i]);
+    }
+    SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setMapperLocations(mappers);
+    return factoryBean.getObject();
+  }
+
+}
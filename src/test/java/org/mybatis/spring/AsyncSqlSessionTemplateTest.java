@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * @version $Id$
+ */
+public final class AsyncSqlSessionTemplateTest extends AbstractMyBatisSpringTest {
+
+  @Test
+  public void testSelectOne() throws Exception {
+    AsyncSqlSessionTemplate template = new AsyncSqlSessionTemplate(sqlSessionFactory, new SimpleAsyncTaskExecutor());
+
+    Future<Integer> result = template.selectOne("org.mybatis.spring.TestMapper.findTest");
+
+    assertEquals(Integer.valueOf(1), result.get());
+    assertCommit();
+  }
+
+  @Test
+  public void testExceptionTranslatedOnCompletion() throws Exception {
+    // this query must be the same as the query in TestMapper.xml
+    connection.getPreparedStatementResultSetHandler().prepareThrowsSQLException("SELECT 'fail'");
+
+    AsyncSqlSessionTemplate template = new AsyncSqlSessionTemplate(sqlSessionFactory, new SimpleAsyncTaskExecutor());
+
+    Future<Object> result = template.selectOne("org.mybatis.spring.TestMapper.findFail");
+    try {
+      result.get();
+      fail("exception not thrown when expected");
+    } catch (ExecutionException e) {
+      assertTrue("SQLExceptions should be translated into DataAccessExceptions",
+          e.getCause() instanceof DataAccessException);
+    }
+  }
+
+  @Test
+  public void testNeverParticipatesInTx() throws Exception {
+    AsyncSqlSessionTemplate template = new AsyncSqlSessionTemplate(sqlSessionFactory,
+        new TaskExecutorAdapter(new SyncTaskExecutor()));
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      template.selectOne("org.mybatis.spring.TestMapper.findTest").get();
+      fail("exception not thrown when expected");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+/**
+ * @version $Id$
+ */
+public final class MyBatisExceptionTranslatorTest extends AbstractEmbeddedDatabaseTest {
+
+  private static SQLExceptionTranslator springTranslator;
+
+  @BeforeClass
+  public static void setupTranslator() {
+    springTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+  }
+
+  @Test
+  public void testRepeatedTranslationsMatchSpring() {
+    MyBatisExceptionTranslator translator = new MyBatisExceptionTranslator(dataSource, false);
+
+    // HSQL duplicate key, bad grammar, data integrity violation and an unknown code
+    SQLException[] sqlExceptions = {
+        new SQLException("duplicate", "23505", -104),
+        new SQLException("grammar", "42501", -5501),
+        new SQLException("integrity", "23502", -10),
+        new SQLException("unknown", "HY000", 12345) };
+    for (int i = 0; i < 3; i++) {
+      for (SQLException sqlException : sqlExceptions) {
+        assertSameTranslation(translator, sqlException);
+      }
+    }
+  }
+
+  @Test
+  public void testBatchExceptionTranslatedFromNextException() {
+    MyBatisExceptionTranslator translator = new MyBatisExceptionTranslator(dataSource, false);
+
+    // same class, error code and SQLState, only the second one has a next exception
+    BatchUpdateException plain = new BatchUpdateException("batch", "23502", -10, new int[0]);
+    BatchUpdateException withNext = new BatchUpdateException("batch", "23502", -10, new int[0]);
+    withNext.setNextException(new SQLException("duplicate", "23505", -104));
+
+    translator.translateExceptionIfPossible(new PersistenceException("Error flushing statements", plain));
+    PersistenceException e = new PersistenceException("Error flushing statements", withNext);
+    DataAccessException translated = translator.translateExceptionIfPossible(e);
+    DataAccessException expected = springTranslator.translate(e.getMessage() + "\n", null, withNext);
+
+    assertEquals(DuplicateKeyException.class, translated.getClass());
+    assertEquals(expected.getClass(), translated.getClass());
+    assertEquals(expected.getMessage(), translated.getMessage());
+  }
+
+  @Test
+  public void testConcurrentTranslations() throws Exception {
+    final MyBatisExceptionTranslator translator = new MyBatisExceptionTranslator(dataSource, true);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() {
+            for (int i = 0; i < 1000; i++) {
+              assertSameTranslation(translator, new SQLException("duplicate " + i, "23505", -104));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void assertSameTranslation(MyBatisExceptionTranslator translator, SQLException sqlException) {
+    PersistenceException e = new PersistenceException("Error updating database", sqlException);
+
+    DataAccessException translated = translator.translateExceptionIfPossible(e);
+    DataAccessException expected = springTranslator.translate(e.getMessage() + "\n", null, sqlException);
+
+    assertEquals(expected.getClass(), translated.getClass());
+    assertEquals(expected.getMessage(), translated.getMessage());
+    assertSame(sqlException, translated.getCause());
+  }
+
+}
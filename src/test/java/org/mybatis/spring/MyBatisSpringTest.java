@@ -16,7 +16,10 @@
 package org.mybatis.spring;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.apache.ibatis.exceptions.PersistenceException;
@@ -126,6 +129,41 @@ public final class MyBatisSpringTest extends AbstractMyBatisSpringTest {
     assertSingleConnection();
   }
 
+  @Test
+  public void testAcquiredSqlSessionWithNoTx() {
+    SqlSessionUtils.SqlSessionHandle handle = SqlSessionUtils.acquireSqlSession(sqlSessionFactory,
+        sqlSessionFactory.getConfiguration().getDefaultExecutorType(), null);
+    session = handle.getSqlSession();
+    session.getMapper(TestMapper.class).findTest();
+
+    assertFalse(handle.isTransactional());
+    handle.release();
+
+    assertNoCommit();
+    assertSingleConnection();
+    assertExecuteCount(1);
+  }
+
+  @Test
+  public void testAcquiredSqlSessionWithTx() throws Exception {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+
+    SqlSessionUtils.SqlSessionHandle handle = SqlSessionUtils.acquireSqlSession(sqlSessionFactory,
+        sqlSessionFactory.getConfiguration().getDefaultExecutorType(), null);
+    session = handle.getSqlSession();
+    session.getMapper(TestMapper.class).findTest();
+
+    assertTrue(handle.isTransactional());
+    assertTrue(SqlSessionUtils.isSqlSessionTransactional(session, sqlSessionFactory));
+    handle.release();
+    assertFalse("released transactional session should stay open", connection.isClosed());
+
+    txManager.commit(status);
+
+    assertCommit();
+    assertSingleConnection();
+  }
+
   @Test
   public void testSpringAPIWithMyBatisClose() {
     // This is a programming error and could lead to connection leak if there is a transaction
@@ -223,24 +261,35 @@ public final class MyBatisSpringTest extends AbstractMyBatisSpringTest {
     }
   }
 
-  @Test(expected = TransientDataAccessResourceException.class)
+  @Test
   public void testChangeExecutorTypeInTx() throws Exception {
-    TransactionStatus status = null;
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
 
-    try {
-      status = txManager.getTransaction(new DefaultTransactionDefinition());
+    SqlSession simpleSession = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    session = SqlSessionUtils.getSqlSession(sqlSessionFactory, ExecutorType.BATCH, exceptionTranslator);
 
-      session = SqlSessionUtils.getSqlSession(sqlSessionFactory);
+    // each executor type gets its own session, bound to the same transaction
+    assertNotSame(simpleSession, session);
+    assertTrue(SqlSessionUtils.isSqlSessionTransactional(simpleSession, sqlSessionFactory));
+    assertTrue(SqlSessionUtils.isSqlSessionTransactional(session, sqlSessionFactory));
+    SqlSession batchSession = SqlSessionUtils.getSqlSession(sqlSessionFactory, ExecutorType.BATCH, exceptionTranslator);
+    assertSame(session, batchSession);
 
-      session = SqlSessionUtils.getSqlSession(sqlSessionFactory, ExecutorType.BATCH, exceptionTranslator);
+    session.getMapper(TestMapper.class).findTest();
+    simpleSession.getMapper(TestMapper.class).findTest();
 
-      fail("should not be able to change the Executor type during an existing transaction");
-    } finally {
-      SqlSessionUtils.closeSqlSession(session, sqlSessionFactory);
+    SqlSessionUtils.closeSqlSession(batchSession, sqlSessionFactory);
+    SqlSessionUtils.closeSqlSession(session, sqlSessionFactory);
+    SqlSessionUtils.closeSqlSession(simpleSession, sqlSessionFactory);
+    assertFalse("sessions are closed with the transaction", connection.isClosed());
 
-      // rollback required to close connection
-      txManager.rollback(status);
-    }
+    txManager.commit(status);
+
+    // a single connection commit, but both sessions are committed
+    assertCommitJdbc();
+    assertEquals("should call commit on both SqlSessions", 2, executorInterceptor.getCommitCount());
+    assertSingleConnection();
+    assertExecuteCount(2);
   }
 
   @Test
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.ParallelQueryExecutor.Query;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * @version $Id$
+ */
+public final class ParallelQueryExecutorTest extends AbstractEmbeddedDatabaseTest {
+
+  private static ParallelQueryExecutor executor;
+
+  @BeforeClass
+  public static void setupExecutor() {
+    executor = new ParallelQueryExecutor(new SqlSessionTemplate(sqlSessionFactory), new SimpleAsyncTaskExecutor());
+    executor.setParallelism(3);
+  }
+
+  @Test
+  public void testResultsInQueryOrder() {
+    List<List<?>> results = executor.selectLists(
+        new Query("getEmployee"),
+        new Query("check"),
+        new Query("getEmployee"),
+        new Query("check"));
+
+    assertEquals(4, results.size());
+    assertEquals(4, results.get(0).size());
+    assertEquals(10000, results.get(1).get(0));
+    assertEquals(4, results.get(2).size());
+    assertEquals(10000, results.get(3).get(0));
+  }
+
+  @Test
+  public void testFirstFailureIsTranslated() {
+    try {
+      executor.selectLists(new Query("getEmployee"), new Query("undefined"), new Query("check"));
+      fail("exception not thrown when expected");
+    } catch (DataAccessException e) {
+      // success
+    }
+  }
+
+  @Test
+  public void testSequentialInTx() {
+    DataSourceTransactionManager txManager = new DataSourceTransactionManager(dataSource);
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      List<List<?>> results = executor.selectLists(new Query("getEmployee"), new Query("check"));
+
+      assertEquals(4, results.get(0).size());
+      assertEquals(10000, results.get(1).get(0));
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+}
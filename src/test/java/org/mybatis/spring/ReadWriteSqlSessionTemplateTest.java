@@ -0,0 +1,169 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.ReadWriteSqlSessionTemplate.ReplicaSelection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * @version $Id$
+ */
+public final class ReadWriteSqlSessionTemplateTest extends AbstractEmbeddedDatabaseTest {
+
+  private static final String CHECK = "org.mybatis.spring.EmployeeMapper.check";
+
+  private static final String UPDATE = "org.mybatis.spring.EmployeeMapper.updateEmployee";
+
+  private static EmbeddedDatabase replicaDataSource;
+
+  private static SqlSessionFactory replicaSqlSessionFactory;
+
+  private ReadWriteSqlSessionTemplate sqlSession;
+
+  @BeforeClass
+  public static void setupReplica() throws Exception {
+    replicaDataSource = createDatabase("org/mybatis/spring/db");
+    replicaSqlSessionFactory = createSqlSessionFactory(replicaDataSource, EMPLOYEE_MAPPER);
+  }
+
+  @Before
+  public void setupSqlSession() {
+    // the replica lags behind: the last salary was not replicated yet
+    new JdbcTemplate(replicaDataSource).update("update employees set salary = 0 where id = 4");
+
+    sqlSession = new ReadWriteSqlSessionTemplate(sqlSessionFactory, Arrays.asList(replicaSqlSessionFactory));
+  }
+
+  @After
+  public void resetDatabases() {
+    new JdbcTemplate(dataSource).update("update employees set salary = 1000 where id = 1");
+    new JdbcTemplate(dataSource).update("update employees set salary = 4000 where id = 4");
+    new JdbcTemplate(replicaDataSource).update("update employees set salary = 4000 where id = 4");
+  }
+
+  @Test
+  public void testSelectGoesToReplica() {
+    assertEquals(6000, sqlSession.selectOne(CHECK));
+  }
+
+  @Test
+  public void testUpdateGoesToPrimary() {
+    sqlSession.update(UPDATE, employee(4, 5000));
+
+    assertEquals(11000, new JdbcTemplate(dataSource).queryForInt("select sum(salary) from employees"));
+    assertEquals(6000, sqlSession.selectOne(CHECK));
+  }
+
+  @Test
+  public void testSelectInReadWriteTxGoesToPrimary() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      assertEquals(10000, sqlSession.selectOne(CHECK));
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test
+  public void testSelectInReadOnlyTxGoesToReplica() {
+    DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+    definition.setReadOnly(true);
+    TransactionStatus status = txManager.getTransaction(definition);
+    try {
+      assertEquals(6000, sqlSession.selectOne(CHECK));
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test
+  public void testReadYourWrites() throws Exception {
+    sqlSession.setReadYourWritesWindow(200);
+
+    sqlSession.update(UPDATE, employee(1, 2000));
+    assertEquals(11000, sqlSession.selectOne(CHECK));
+
+    Thread.sleep(300);
+    assertEquals(6000, sqlSession.selectOne(CHECK));
+  }
+
+  @Test
+  public void testReadYourWritesStartsAtCommit() {
+    sqlSession.setReadYourWritesWindow(60000);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSession.update(UPDATE, employee(1, 2000));
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+    txManager.commit(status);
+
+    assertEquals(11000, sqlSession.selectOne(CHECK));
+  }
+
+  @Test
+  public void testRolledBackWriteDoesNotStartReadYourWrites() {
+    sqlSession.setReadYourWritesWindow(60000);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSession.update(UPDATE, employee(1, 2000));
+    } finally {
+      txManager.rollback(status);
+    }
+
+    assertEquals(6000, sqlSession.selectOne(CHECK));
+  }
+
+  @Test
+  public void testRoundRobinAndLeastOutstanding() throws Exception {
+    // second replica holds the primary data
+    SqlSessionTemplate primary = new SqlSessionTemplate(sqlSessionFactory);
+    SqlSessionTemplate replica = new SqlSessionTemplate(replicaSqlSessionFactory);
+    sqlSession = new ReadWriteSqlSessionTemplate(primary, Arrays.asList(replica, primary));
+
+    int first = (Integer) sqlSession.selectOne(CHECK);
+    int second = (Integer) sqlSession.selectOne(CHECK);
+    assertEquals(16000, first + second);
+
+    sqlSession.setReplicaSelection(ReplicaSelection.LEAST_OUTSTANDING);
+    first = (Integer) sqlSession.selectOne(CHECK);
+    second = (Integer) sqlSession.selectOne(CHECK);
+    assertEquals(16000, first + second);
+  }
+
+  private static Employee employee(int id, int salary) {
+    Employee employee = new Employee();
+    employee.setId(id);
+    employee.setSalary(salary);
+    return employee;
+  }
+
+}
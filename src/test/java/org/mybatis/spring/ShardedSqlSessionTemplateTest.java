@@ -0,0 +1,176 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * @version $Id$
+ */
+public final class ShardedSqlSessionTemplateTest extends AbstractEmbeddedDatabaseTest {
+
+  private static final String GET = "org.mybatis.spring.EmployeeMapper.getEmployee";
+
+  private static final String CHECK = "org.mybatis.spring.EmployeeMapper.check";
+
+  private static final String UPDATE = "org.mybatis.spring.EmployeeMapper.updateEmployee";
+
+  private static EmbeddedDatabase[] dataSources;
+
+  private static SqlSessionFactory[] sqlSessionFactories;
+
+  private static ShardedSqlSessionTemplate sqlSession;
+
+  @BeforeClass
+  public static void setupShards() throws Exception {
+    dataSources = new EmbeddedDatabase[] { dataSource, createDatabase("org/mybatis/spring/db") };
+    sqlSessionFactories = new SqlSessionFactory[] { sqlSessionFactory, createSqlSessionFactory(dataSources[1], EMPLOYEE_MAPPER) };
+    for (int i = 0; i < 2; i++) {
+      // each shard keeps the employees whose id hashes to it
+      new JdbcTemplate(dataSources[i]).update("delete from employees where mod(id, 2) <> ?", i);
+    }
+
+    sqlSession = new ShardedSqlSessionTemplate(Arrays.asList(sqlSessionFactories), new ShardKeyExtractor() {
+      public Object getShardKey(String statement, Object parameter) {
+        return parameter instanceof Employee ? ((Employee) parameter).getId() : null;
+      }
+    });
+  }
+
+  @After
+  public void resetShards() {
+    for (EmbeddedDatabase shard : dataSources) {
+      new JdbcTemplate(shard).update("update employees set salary = id * 1000");
+    }
+  }
+
+  @Test
+  public void testScatterGatherSelectList() {
+    List<Employee> employees = sqlSession.selectList(GET);
+
+    assertEquals(4, employees.size());
+  }
+
+  @Test
+  public void testScatterGatherSelectListRowBounds() {
+    List<Employee> employees = sqlSession.selectList(GET, null, new RowBounds(1, 2));
+
+    assertEquals(2, employees.size());
+  }
+
+  @Test
+  public void testScatterGatherSelectOneFailsWithRowsInSeveralShards() {
+    try {
+      sqlSession.selectOne(CHECK);
+      fail("exception not thrown when expected");
+    } catch (DataAccessException e) {
+      // success
+    }
+  }
+
+  @Test
+  public void testUpdateGoesToKeyShard() {
+    sqlSession.update(UPDATE, employee(3, 9000));
+
+    assertEquals(6000, new JdbcTemplate(dataSources[0]).queryForInt("select sum(salary) from employees"));
+    assertEquals(10000, new JdbcTemplate(dataSources[1]).queryForInt("select sum(salary) from employees"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUpdateWithoutShardKey() {
+    sqlSession.update(UPDATE);
+  }
+
+  @Test
+  public void testSessionBoundPerShard() {
+    DataSourceTransactionManager txManager = new DataSourceTransactionManager(dataSources[0]);
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSession.update(UPDATE, employee(2, 0));
+
+      assertTrue(TransactionSynchronizationManager.hasResource(sqlSessionFactories[0]));
+      assertFalse(TransactionSynchronizationManager.hasResource(sqlSessionFactories[1]));
+
+      // scattered selects run on this thread and see the shard transaction
+      List<Integer> sums = sqlSession.selectList(CHECK);
+      assertEquals(Arrays.asList(4000, 4000), sums);
+    } finally {
+      txManager.rollback(status);
+    }
+
+    assertEquals(6000, new JdbcTemplate(dataSources[0]).queryForInt("select sum(salary) from employees"));
+  }
+
+  @Test
+  public void testFlushStatementsOfEveryShard() {
+    ShardedSqlSessionTemplate batchSqlSession = new ShardedSqlSessionTemplate(new SqlSessionTemplate[] {
+        new SqlSessionTemplate(sqlSessionFactories[0], ExecutorType.BATCH),
+        new SqlSessionTemplate(sqlSessionFactories[1], ExecutorType.BATCH) }, new ShardKeyExtractor() {
+      public Object getShardKey(String statement, Object parameter) {
+        return ((Employee) parameter).getId();
+      }
+    });
+
+    DataSourceTransactionManager txManager = new DataSourceTransactionManager(dataSources[0]);
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      batchSqlSession.update(UPDATE, employee(2, 0));
+      batchSqlSession.update(UPDATE, employee(3, 0));
+
+      List<BatchResult> batchResults = batchSqlSession.flushStatements();
+
+      assertEquals(2, batchResults.size());
+      assertEquals(1, batchResults.get(0).getUpdateCounts()[0]);
+      assertEquals(1, batchResults.get(1).getUpdateCounts()[0]);
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetConnectionNotSupported() {
+    sqlSession.getConnection();
+  }
+
+  private static Employee employee(int id, int salary) {
+    Employee employee = new Employee();
+    employee.setId(id);
+    employee.setSalary(salary);
+    return employee;
+  }
+
+}
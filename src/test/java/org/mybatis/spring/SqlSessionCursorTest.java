@@ -0,0 +1,268 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * @version $Id$
+ */
+public final class SqlSessionCursorTest extends AbstractMyBatisSpringTest {
+
+  private static final int ROWS = 500;
+
+  private static SqlSessionTemplate sqlSessionTemplate;
+
+  @BeforeClass
+  public static void setupSqlTemplate() {
+    sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+  }
+
+  private void prepareRows() {
+    prepareRows(connection);
+    prepareRows(connectionTwo);
+  }
+
+  private void prepareRows(MockConnection con) {
+    // this query must be the same as the query in TestMapper.xml
+    MockResultSet rs = new MockResultSet("SELECT 1");
+    for (int i = 0; i < ROWS; i++) {
+      rs.addRow(new Object[] { i });
+    }
+    con.getPreparedStatementResultSetHandler().prepareResultSet("SELECT 1", rs);
+  }
+
+  @Test
+  public void testReadAllRows() throws SQLException {
+    prepareRows();
+
+    SqlSessionCursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+    int count = 0;
+    try {
+      while (cursor.hasNext()) {
+        assertEquals(Integer.valueOf(count++), cursor.next());
+      }
+      assertFalse("connection should stay open until the cursor is closed", connection.isClosed());
+    } finally {
+      cursor.close();
+    }
+
+    assertEquals(ROWS, count);
+    assertCommit();
+    assertSingleConnection();
+  }
+
+  @Test
+  public void testCloseBeforeLastRow() {
+    prepareRows();
+
+    SqlSessionCursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+    try {
+      for (int i = 0; i < 10; i++) {
+        cursor.next();
+      }
+    } finally {
+      cursor.close();
+    }
+
+    assertTrue(cursor.isClosed());
+    assertFalse(cursor.hasNext());
+    assertTrue(executorInterceptor.isExecutorClosed());
+  }
+
+  @Test
+  public void testCursorClosedAtTxCompletion() throws SQLException {
+    prepareRows();
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+
+    SqlSessionCursor<Integer> cursor;
+    try {
+      cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+      cursor.next();
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+
+    txManager.commit(status);
+
+    assertTrue("cursor should be closed at tx completion", cursor.isClosed());
+    assertConnectionClosed(connectionTwo);
+  }
+
+  @Test
+  public void testCursorDoesNotUseTxConnection() throws SQLException {
+    prepareRows();
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      SqlSessionCursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+      try {
+        cursor.next();
+        // a statement of the transaction while the cursor is open
+        sqlSessionTemplate.selectList("org.mybatis.spring.TestMapper.findTest");
+      } finally {
+        cursor.close();
+      }
+    } finally {
+      txManager.commit(status);
+    }
+
+    assertEquals("tx statement should run on the tx connection", 1,
+        connection.getPreparedStatementResultSetHandler().getExecutedStatements().size());
+    assertEquals("cursor should read on a connection of its own", 1,
+        connectionTwo.getPreparedStatementResultSetHandler().getExecutedStatements().size());
+    assertConnectionClosed(connectionTwo);
+  }
+
+  @Test
+  public void testCursorClosedBeforeTxCommit() {
+    prepareRows();
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+
+    final SqlSessionCursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+    final boolean[] closedBeforeCommit = new boolean[1];
+    // runs after the cursor synchronization, the connection is committed after both
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void beforeCompletion() {
+        closedBeforeCommit[0] = cursor.isClosed();
+      }
+    });
+    cursor.next();
+
+    txManager.commit(status);
+
+    assertTrue("cursor should be closed before the connection commits", closedBeforeCommit[0]);
+  }
+
+  @Test
+  public void testOpenFailsWhenNoThreadStartsReading() throws Exception {
+    prepareRows();
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+      template.setCursorTaskExecutor(new ConcurrentTaskExecutor(executor));
+      template.setCursorStartTimeout(50);
+
+      // keeps the only thread busy so the cursor task stays queued
+      final CountDownLatch release = new CountDownLatch(1);
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+
+      try {
+        template.selectCursor("org.mybatis.spring.TestMapper.findTest");
+        fail("exception not thrown when expected");
+      } catch (TaskRejectedException e) {
+        // success
+      }
+      assertTrue(executorInterceptor.isExecutorClosed());
+
+      // the queued task must not read once a thread is available
+      release.countDown();
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+      assertEquals("should not get a Connection", 0, dataSource.getConnectionCount());
+      connection.close();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testOpenFailsWhenTaskIsRejected() throws SQLException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setCursorTaskExecutor(new TaskExecutor() {
+      public void execute(Runnable task) {
+        throw new TaskRejectedException("no thread");
+      }
+    });
+
+    try {
+      template.selectCursor("org.mybatis.spring.TestMapper.findTest");
+      fail("exception not thrown when expected");
+    } catch (TaskRejectedException e) {
+      // success
+    }
+    assertTrue(executorInterceptor.isExecutorClosed());
+    assertEquals("should not get a Connection", 0, dataSource.getConnectionCount());
+    connection.close();
+  }
+
+  @Test
+  public void testHasNextReturnsWhenProducerIsGone() throws Exception {
+    prepareRows();
+
+    SqlSessionCursor<Integer> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findTest");
+    try {
+      cursor.next();
+    } finally {
+      cursor.close();
+    }
+
+    assertFalse("a closed cursor should not wait for rows", cursor.hasNext());
+  }
+
+  @Test
+  public void testExceptionTranslation() {
+    // this query must be the same as the query in TestMapper.xml
+    connection.getPreparedStatementResultSetHandler().prepareThrowsSQLException("SELECT 'fail'");
+
+    SqlSessionCursor<Object> cursor = sqlSessionTemplate.selectCursor("org.mybatis.spring.TestMapper.findFail");
+    try {
+      cursor.hasNext();
+      fail("exception not thrown when expected");
+    } catch (DataAccessException e) {
+      // success
+    } finally {
+      cursor.close();
+    }
+  }
+
+}
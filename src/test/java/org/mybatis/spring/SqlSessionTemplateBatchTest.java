@@ -0,0 +1,179 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * @version $Id$
+ */
+public final class SqlSessionTemplateBatchTest extends AbstractEmbeddedDatabaseTest {
+
+  private static final String UPDATE = "org.mybatis.spring.EmployeeMapper.updateEmployee";
+
+  private static final String CHECK_STATEMENT = "org.mybatis.spring.EmployeeMapper.check";
+
+  private static final String CHECK = "select sum(salary) from employees";
+
+  private SqlSessionTemplate sqlSessionTemplate;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Before
+  public void setupTemplate() {
+    sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    // shares the transaction connection, so it sees flushed but uncommitted changes
+    jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  @After
+  public void resetDatabase() {
+    jdbcTemplate.update("update employees set salary = id * 1000");
+  }
+
+  @Test
+  public void testNoAutoFlushByDefault() {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      for (int i = 1; i <= 4; i++) {
+        sqlSessionTemplate.update(UPDATE, employee(i, 0));
+      }
+      assertEquals(10000, jdbcTemplate.queryForInt(CHECK));
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test
+  public void testAutoFlushDiscardingResults() {
+    sqlSessionTemplate.setBatchFlushThreshold(2);
+    sqlSessionTemplate.setKeepAutoFlushedBatchResults(false);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSessionTemplate.update(UPDATE, employee(1, 0));
+      assertEquals(10000, jdbcTemplate.queryForInt(CHECK));
+      sqlSessionTemplate.update(UPDATE, employee(2, 0));
+      assertEquals(7000, jdbcTemplate.queryForInt(CHECK));
+      sqlSessionTemplate.update(UPDATE, employee(3, 0));
+      assertEquals(7000, jdbcTemplate.queryForInt(CHECK));
+
+      List<BatchResult> batchResults = sqlSessionTemplate.flushStatements();
+      assertEquals(1, batchResults.size());
+      assertEquals(1, batchResults.get(0).getUpdateCounts().length);
+      assertEquals(4000, jdbcTemplate.queryForInt(CHECK));
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test
+  public void testAutoFlushKeepingResults() {
+    sqlSessionTemplate.setBatchFlushThreshold(2);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      for (int i = 1; i <= 3; i++) {
+        sqlSessionTemplate.update(UPDATE, employee(i, 0));
+      }
+
+      List<BatchResult> batchResults = sqlSessionTemplate.flushStatements();
+      assertEquals(2, batchResults.size());
+      assertEquals(2, batchResults.get(0).getUpdateCounts().length);
+      assertEquals(1, batchResults.get(1).getUpdateCounts().length);
+
+      // like the executor, the results of every flush are returned until the commit
+      List<BatchResult> again = sqlSessionTemplate.flushStatements();
+      assertEquals(batchResults, again);
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test
+  public void testAutoFlushedChangesCommitted() {
+    sqlSessionTemplate.setBatchFlushThreshold(3);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      for (int i = 1; i <= 4; i++) {
+        sqlSessionTemplate.update(UPDATE, employee(i, 1));
+      }
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+    txManager.commit(status);
+
+    assertEquals(4, jdbcTemplate.queryForInt(CHECK));
+  }
+
+  @Test
+  public void testSimpleSelectSeesBatchedWrites() {
+    SqlSessionTemplate simpleTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.SIMPLE);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSessionTemplate.update(UPDATE, employee(1, 0));
+      sqlSessionTemplate.update(UPDATE, employee(2, 0));
+      assertEquals(10000, jdbcTemplate.queryForInt(CHECK));
+
+      assertEquals(7000, simpleTemplate.selectOne(CHECK_STATEMENT));
+    } finally {
+      txManager.rollback(status);
+    }
+
+    assertEquals(10000, jdbcTemplate.queryForInt(CHECK));
+  }
+
+  @Test
+  public void testSimpleWriteRunsAfterBatchedWrites() {
+    SqlSessionTemplate simpleTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.SIMPLE);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSessionTemplate.update(UPDATE, employee(1, 0));
+      // would be overwritten by the batch if it ran first
+      assertEquals(1, simpleTemplate.update(UPDATE, employee(1, 500)));
+      sqlSessionTemplate.update(UPDATE, employee(2, 0));
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+    txManager.commit(status);
+
+    assertEquals(7500, jdbcTemplate.queryForInt(CHECK));
+  }
+
+  private static Employee employee(int id, int salary) {
+    Employee employee = new Employee();
+    employee.setId(id);
+    employee.setSalary(salary);
+    return employee;
+  }
+
+}
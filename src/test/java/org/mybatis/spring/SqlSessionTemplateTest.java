@@ -185,4 +185,110 @@ public final class SqlSessionTemplateTest extends AbstractMyBatisSpringTest {
     assertSingleConnection();
   }
 
+  @Test
+  public void testExecuteCallbackWithNoTx() {
+    Integer result = ((SqlSessionTemplate) sqlSessionTemplate).execute(new SqlSessionCallback<Integer>() {
+      public Integer doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.<Integer> selectOne("org.mybatis.spring.TestMapper.findTest");
+      }
+    });
+
+    assertEquals(Integer.valueOf(1), result);
+    assertCommit();
+  }
+
+  @Test(expected = DataAccessException.class)
+  public void testExecuteCallbackTranslatesExceptions() {
+    // this query must be the same as the query in TestMapper.xml
+    connection.getPreparedStatementResultSetHandler().prepareThrowsSQLException("SELECT 'fail'");
+
+    ((SqlSessionTemplate) sqlSessionTemplate).execute(new SqlSessionCallback<Object>() {
+      public Object doInSqlSession(SqlSession sqlSession) {
+        return sqlSession.selectOne("org.mybatis.spring.TestMapper.findFail");
+      }
+    });
+  }
+
+  @Test
+  public void testReuseNonTransactionalSessions() throws SQLException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setReuseNonTransactionalSessions(true);
+
+    try {
+      template.getMapper(TestMapper.class).findTest();
+      template.getMapper(TestMapper.class).findTest();
+
+      assertEquals("should take a Connection for each call", 2, dataSource.getConnectionCount());
+      assertEquals("should commit the Connection of each call", 1, connection.getNumberCommits());
+      assertEquals("should commit the Connection of each call", 1, connectionTwo.getNumberCommits());
+      assertTrue("should return the Connection after each call", connection.isClosed());
+      assertTrue("should return the Connection after each call", connectionTwo.isClosed());
+      assertFalse("thread session should be kept between calls", executorInterceptor.isExecutorClosed());
+    } finally {
+      template.releaseThreadSession();
+    }
+  }
+
+  @Test
+  public void testReusedSessionIsReleasedWhenTxBegins() throws SQLException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setReuseNonTransactionalSessions(true);
+
+    template.getMapper(TestMapper.class).findTest();
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      template.getMapper(TestMapper.class).findTest();
+
+      assertTrue("thread session Connection should be returned after the call", connection.isClosed());
+      assertTrue("thread session should be closed once a tx is active", executorInterceptor.isExecutorClosed());
+      assertFalse(connectionTwo.isClosed());
+    } finally {
+      txManager.rollback(status);
+    }
+  }
+
+  @Test
+  public void testNoCommitOnNonTransactionalSelect() throws SQLException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setForceCommitOnSelect(false);
+
+    template.getMapper(TestMapper.class).findTest();
+
+    assertNoCommit();
+    assertTrue("should release the Connection", connection.isClosed());
+    assertTrue(executorInterceptor.isExecutorClosed());
+  }
+
+  @Test
+  public void testReusedSessionCommitsSelectsWhenNotForcingCommitOnSelect() throws SQLException {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setReuseNonTransactionalSessions(true);
+    template.setForceCommitOnSelect(false);
+
+    try {
+      template.getMapper(TestMapper.class).findTest();
+      template.getMapper(TestMapper.class).findTest();
+
+      assertEquals("should end the transaction of each select before returning the Connection", 1,
+          connection.getNumberCommits());
+      assertEquals("should end the transaction of each select before returning the Connection", 1,
+          connectionTwo.getNumberCommits());
+      assertTrue(connection.isClosed());
+      assertTrue(connectionTwo.isClosed());
+    } finally {
+      template.releaseThreadSession();
+    }
+  }
+
+  @Test
+  public void testCommitOnNonTransactionalInsertWhenNotForcingCommitOnSelect() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory);
+    template.setForceCommitOnSelect(false);
+
+    template.getMapper(TestMapper.class).insertTest("test1");
+
+    assertCommit();
+  }
+
 }
@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import org.junit.BeforeClass;
+import org.mybatis.spring.AbstractEmbeddedDatabaseTest;
+
+/**
+ * Base of the batch tests, over the fixtures and the {@code UserDao} mapper of the batch package.
+ *
+ * @version $Id$
+ */
+public abstract class AbstractBatchDatabaseTest extends AbstractEmbeddedDatabaseTest {
+
+  @BeforeClass
+  public static void setupDatabase() throws Exception {
+    setupDatabase("org/mybatis/spring/batch/db", "org/mybatis/spring/batch/dao/EmployeeMapper.xml");
+  }
+
+}
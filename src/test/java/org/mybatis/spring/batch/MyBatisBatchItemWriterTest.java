@@ -0,0 +1,368 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.junit.After;
+import org.junit.Test;
+import org.mybatis.spring.ShardKeyExtractor;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.batch.domain.Employee;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.JdbcUpdateAffectedIncorrectNumberOfRowsException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * @version $Id$
+ */
+public final class MyBatisBatchItemWriterTest extends AbstractBatchDatabaseTest {
+
+  @After
+  public void resetDatabase() {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.update("delete from employees where id > 4");
+    jdbcTemplate.update("update employees set salary = id * 1000");
+  }
+
+  @Test
+  public void testMultiRowInsert() {
+    MyBatisBatchItemWriter<Employee> writer = writer("insertEmployees", 2);
+
+    write(writer, newEmployees(5, 9));
+
+    assertEquals(9, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testWholeChunkInOneStatement() {
+    MyBatisBatchItemWriter<Employee> writer = writer("insertEmployees", 100);
+
+    write(writer, newEmployees(5, 7));
+
+    assertEquals(7, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testMissingRowsDetected() {
+    MyBatisBatchItemWriter<Employee> writer = writer("clearSalaries", 3);
+
+    List<Employee> employees = new ArrayList<Employee>();
+    employees.addAll(newEmployees(1, 3));
+    employees.addAll(newEmployees(4, 5));
+    try {
+      write(writer, employees);
+      fail("exception not thrown when expected");
+    } catch (JdbcUpdateAffectedIncorrectNumberOfRowsException e) {
+      assertEquals(2, e.getExpectedRowsAffected());
+      assertEquals(1, e.getActualRowsAffected());
+    }
+  }
+
+  @Test
+  public void testMissingRowsNotAsserted() {
+    MyBatisBatchItemWriter<Employee> writer = writer("clearSalaries", 3);
+    writer.setAssertUpdates(false);
+
+    write(writer, newEmployees(3, 6));
+
+    assertEquals(3000, new JdbcTemplate(dataSource).queryForInt("select sum(salary) from employees"));
+  }
+
+  @Test
+  public void testFailingItemsSkipped() {
+    MyBatisBatchItemWriter<Employee> writer = writer("insertEmployee", 0);
+    RecordingSkipListener listener = new RecordingSkipListener();
+    writer.setItemSkipListener(listener);
+
+    write(writer, withDuplicates());
+
+    assertSkipped(listener);
+  }
+
+  @Test
+  public void testFailingItemsSkippedFromLists() {
+    MyBatisBatchItemWriter<Employee> writer = writer("insertEmployees", 3);
+    RecordingSkipListener listener = new RecordingSkipListener();
+    writer.setItemSkipListener(listener);
+
+    write(writer, withDuplicates());
+
+    assertSkipped(listener);
+  }
+
+  @Test
+  public void testFailingItemsSkippedOnlyInTransaction() {
+    MyBatisBatchItemWriter<Employee> writer = writer("insertEmployee", 0);
+    writer.setItemSkipListener(new RecordingSkipListener());
+
+    try {
+      writer.write(newEmployees(5, 6));
+      fail("exception not thrown when expected");
+    } catch (IllegalTransactionStateException e) {
+      // success
+    }
+    assertEquals(4, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testFailingItemFailsChunkWithoutListener() {
+    MyBatisBatchItemWriter<Employee> writer = writer("insertEmployee", 0);
+
+    try {
+      write(writer, withDuplicates());
+      fail("exception not thrown when expected");
+    } catch (DataIntegrityViolationException e) {
+      // success
+    }
+    assertEquals(4, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testSubBatchGrowsWhileFast() {
+    SubBatchRecordingTemplate template = new SubBatchRecordingTemplate(20);
+    MyBatisBatchItemWriter<Employee> writer = subBatchWriter(template, 60000, 2);
+
+    write(writer, newEmployees(5, 24));
+
+    assertEquals(Arrays.asList(2, 4, 6, 6, 2), template.subBatches);
+    assertEquals(6, writer.getSubBatchSize());
+    assertTrue(writer.getRowsPerSecond() > 0);
+    assertEquals(24, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testSubBatchHalvedWhenSlow() {
+    SubBatchRecordingTemplate template = new SubBatchRecordingTemplate(5);
+    MyBatisBatchItemWriter<Employee> writer = subBatchWriter(template, 1, 6);
+
+    write(writer, newEmployees(5, 18));
+
+    assertEquals(Arrays.asList(6, 3, 2, 2, 1), template.subBatches);
+    assertEquals(2, writer.getSubBatchSize());
+    assertEquals(18, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testSubBatchesOverTemplateWithFlushThreshold() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    template.setBatchFlushThreshold(2);
+    MyBatisBatchItemWriter<Employee> writer = subBatchWriter(template, 60000, 3);
+
+    write(writer, newEmployees(5, 14));
+
+    assertEquals(14, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testMissingRowDetectedOverTemplateWithFlushThreshold() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    template.setBatchFlushThreshold(2);
+    MyBatisBatchItemWriter<Employee> writer = new MyBatisBatchItemWriter<Employee>();
+    writer.setSqlSessionTemplate(template);
+    writer.setStatementId("org.mybatis.spring.batch.dao.UserDao.updateEmployee");
+    writer.afterPropertiesSet();
+
+    try {
+      write(writer, newEmployees(1, 5));
+      fail("exception not thrown when expected");
+    } catch (EmptyResultDataAccessException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Item 4 of 5"));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTemplateLeavingOutAutoFlushedResultsRejected() {
+    SqlSessionTemplate template = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    template.setBatchFlushThreshold(2);
+    template.setKeepAutoFlushedBatchResults(false);
+    MyBatisBatchItemWriter<Employee> writer = new MyBatisBatchItemWriter<Employee>();
+    writer.setSqlSessionTemplate(template);
+    writer.setStatementId("org.mybatis.spring.batch.dao.UserDao.updateEmployee");
+    writer.afterPropertiesSet();
+  }
+
+  @Test
+  public void testPartitionsWrittenInParallel() {
+    MyBatisBatchItemWriter<Employee> writer = partitionedWriter(3);
+
+    writer.write(newEmployees(5, 24));
+
+    assertEquals(24, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test
+  public void testFailedPartitionDoesNotRollBackOthers() {
+    MyBatisBatchItemWriter<Employee> writer = partitionedWriter(2);
+
+    List<Employee> employees = newEmployees(5, 10);
+    employees.addAll(newEmployees(2, 2));
+    try {
+      writer.write(employees);
+      fail("exception not thrown when expected");
+    } catch (PartitionedWriteException e) {
+      assertTrue(e.getCause() instanceof DataIntegrityViolationException);
+      assertEquals(3, e.getWrittenItems().size());
+      assertEquals(4, e.getFailedItems().size());
+    }
+    assertEquals(7, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+    assertEquals(5, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees where mod(id, 2) = 1"));
+  }
+
+  private static MyBatisBatchItemWriter<Employee> partitionedWriter(int parallelism) {
+    MyBatisBatchItemWriter<Employee> writer = new MyBatisBatchItemWriter<Employee>();
+    writer.setSqlSessionFactory(sqlSessionFactory);
+    writer.setStatementId("org.mybatis.spring.batch.dao.UserDao.insertEmployee");
+    writer.setPartitionKeyExtractor(new ShardKeyExtractor() {
+      public Object getShardKey(String statement, Object parameter) {
+        return ((Employee) parameter).getId();
+      }
+    });
+    writer.setParallelism(parallelism);
+    writer.setPartitionTransactionManager(txManager);
+    writer.afterPropertiesSet();
+    return writer;
+  }
+
+  private static MyBatisBatchItemWriter<Employee> subBatchWriter(SqlSessionTemplate template, long targetFlushMillis,
+      int subBatchSize) {
+    MyBatisBatchItemWriter<Employee> writer = new MyBatisBatchItemWriter<Employee>();
+    writer.setSqlSessionTemplate(template);
+    writer.setStatementId("org.mybatis.spring.batch.dao.UserDao.insertEmployee");
+    writer.setMinSubBatchSize(2);
+    writer.setMaxSubBatchSize(6);
+    writer.setSubBatchSize(subBatchSize);
+    writer.setTargetFlushMillis(targetFlushMillis);
+    writer.afterPropertiesSet();
+    return writer;
+  }
+
+  private static List<Employee> withDuplicates() {
+    List<Employee> employees = new ArrayList<Employee>();
+    employees.addAll(newEmployees(5, 6));
+    employees.addAll(newEmployees(2, 2));
+    employees.addAll(newEmployees(7, 8));
+    employees.addAll(newEmployees(3, 3));
+    employees.addAll(newEmployees(9, 9));
+    return employees;
+  }
+
+  private static void assertSkipped(RecordingSkipListener listener) {
+    assertEquals(2, listener.items.size());
+    assertEquals(2, listener.items.get(0).getId());
+    assertEquals(3, listener.items.get(1).getId());
+    assertTrue(listener.causes.get(0) instanceof DataIntegrityViolationException);
+    assertEquals(9, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+    // the existing employees were not overwritten
+    assertEquals("Pato", new JdbcTemplate(dataSource).queryForObject("select name from employees where id = 2", String.class));
+  }
+
+  private static MyBatisBatchItemWriter<Employee> writer(String statement, int itemsPerStatement) {
+    MyBatisBatchItemWriter<Employee> writer = new MyBatisBatchItemWriter<Employee>();
+    writer.setSqlSessionFactory(sqlSessionFactory);
+    writer.setStatementId("org.mybatis.spring.batch.dao.UserDao." + statement);
+    writer.setItemsPerStatement(itemsPerStatement);
+    writer.afterPropertiesSet();
+    return writer;
+  }
+
+  private static void write(MyBatisBatchItemWriter<Employee> writer, List<Employee> employees) {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      writer.write(employees);
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+    txManager.commit(status);
+  }
+
+  /**
+   * Records the number of statements of each flush, which takes at least the given time.
+   */
+  private static final class SubBatchRecordingTemplate extends SqlSessionTemplate {
+
+    private final long flushMillis;
+
+    private final List<Integer> subBatches = new ArrayList<Integer>();
+
+    private int updates;
+
+    private SubBatchRecordingTemplate(long flushMillis) {
+      super(sqlSessionFactory, ExecutorType.BATCH);
+      this.flushMillis = flushMillis;
+    }
+
+    @Override
+    public int update(String statement, Object parameter) {
+      updates++;
+      return super.update(statement, parameter);
+    }
+
+    @Override
+    public List<BatchResult> flushStatements() {
+      if (updates > 0) {
+        subBatches.add(updates);
+        updates = 0;
+        try {
+          Thread.sleep(flushMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return super.flushStatements();
+    }
+
+  }
+
+  private static final class RecordingSkipListener implements ItemSkipListener<Employee> {
+
+    private final List<Employee> items = new ArrayList<Employee>();
+
+    private final List<Throwable> causes = new ArrayList<Throwable>();
+
+    public void onSkipInWrite(Employee item, Throwable t) {
+      items.add(item);
+      causes.add(t);
+    }
+
+  }
+
+  private static List<Employee> newEmployees(int firstId, int lastId) {
+    List<Employee> employees = new ArrayList<Employee>();
+    for (int id = firstId; id <= lastId; id++) {
+      Employee employee = new Employee();
+      employee.setId(id);
+      employee.setName("Employee " + id);
+      employee.setSalary(id * 1000);
+      employees.add(employee);
+    }
+    return employees;
+  }
+
+}
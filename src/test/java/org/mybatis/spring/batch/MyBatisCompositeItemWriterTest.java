@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.junit.After;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.batch.domain.Employee;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * @version $Id$
+ */
+public final class MyBatisCompositeItemWriterTest extends AbstractBatchDatabaseTest {
+
+  private static final String INSERT = "org.mybatis.spring.batch.dao.UserDao.insertEmployee";
+
+  private static final String UPDATE = "org.mybatis.spring.batch.dao.UserDao.updateEmployee";
+
+  private List<BatchResult> flushedResults;
+
+  @After
+  public void resetDatabase() {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.update("delete from employees where id > 4");
+    jdbcTemplate.update("update employees set salary = id * 1000");
+  }
+
+  @Test
+  public void testOneBatchPerStatement() {
+    MyBatisCompositeItemWriter<Employee> writer = writer(INSERT, UPDATE);
+
+    write(writer, newEmployees(5, 8));
+
+    assertEquals(2, flushedResults.size());
+    assertEquals(INSERT, flushedResults.get(0).getMappedStatement().getId());
+    assertEquals(4, flushedResults.get(0).getUpdateCounts().length);
+    assertEquals(UPDATE, flushedResults.get(1).getMappedStatement().getId());
+    assertEquals(4, flushedResults.get(1).getUpdateCounts().length);
+    assertEquals(36000, new JdbcTemplate(dataSource).queryForInt("select sum(salary) from employees"));
+  }
+
+  @Test
+  public void testPredicateRestrictsStatement() {
+    MyBatisCompositeItemWriter<Employee> writer = writer(INSERT, UPDATE);
+    writer.setStatementPredicates(Collections.<String, ItemPredicate<? super Employee>> singletonMap(UPDATE,
+        new ItemPredicate<Employee>() {
+          public boolean matches(Employee item) {
+            return item.getId() % 2 == 0;
+          }
+        }));
+
+    write(writer, newEmployees(5, 8));
+
+    assertEquals(2, flushedResults.get(1).getUpdateCounts().length);
+    assertEquals(8, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+    assertEquals(24000, new JdbcTemplate(dataSource).queryForInt("select sum(salary) from employees"));
+  }
+
+  @Test
+  public void testMissingRowsDetectedPerStatement() {
+    MyBatisCompositeItemWriter<Employee> writer = writer(UPDATE);
+
+    List<Employee> employees = newEmployees(3, 5);
+    try {
+      write(writer, employees);
+      fail("exception not thrown when expected");
+    } catch (EmptyResultDataAccessException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(UPDATE));
+    }
+    assertEquals(10000, new JdbcTemplate(dataSource).queryForInt("select sum(salary) from employees"));
+  }
+
+  @Test
+  public void testSeveralWritesInOneTransaction() {
+    MyBatisCompositeItemWriter<Employee> writer = writer(INSERT, UPDATE);
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      writer.write(newEmployees(5, 6));
+      // the executor still returns the results of the first write
+      writer.write(newEmployees(7, 8));
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+    txManager.commit(status);
+
+    assertEquals(8, new JdbcTemplate(dataSource).queryForInt("select count(*) from employees"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPredicateForUnknownStatement() {
+    MyBatisCompositeItemWriter<Employee> writer = new MyBatisCompositeItemWriter<Employee>();
+    writer.setSqlSessionFactory(sqlSessionFactory);
+    writer.setStatementIds(Arrays.asList(UPDATE));
+    writer.setStatementPredicates(Collections.<String, ItemPredicate<? super Employee>> singletonMap(INSERT,
+        new ItemPredicate<Employee>() {
+          public boolean matches(Employee item) {
+            return true;
+          }
+        }));
+    writer.afterPropertiesSet();
+  }
+
+  private MyBatisCompositeItemWriter<Employee> writer(String... statements) {
+    MyBatisCompositeItemWriter<Employee> writer = new MyBatisCompositeItemWriter<Employee>();
+    writer.setSqlSessionTemplate(new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH) {
+      @Override
+      public List<BatchResult> flushStatements() {
+        flushedResults = super.flushStatements();
+        return flushedResults;
+      }
+    });
+    writer.setStatementIds(Arrays.asList(statements));
+    writer.afterPropertiesSet();
+    return writer;
+  }
+
+  private static void write(MyBatisCompositeItemWriter<Employee> writer, List<Employee> employees) {
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      writer.write(employees);
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+    txManager.commit(status);
+  }
+
+  private static List<Employee> newEmployees(int firstId, int lastId) {
+    List<Employee> employees = new ArrayList<Employee>();
+    for (int id = firstId; id <= lastId; id++) {
+      Employee employee = new Employee();
+      employee.setId(id);
+      employee.setName("Employee " + id);
+      employee.setSalary(id * 1000);
+      employees.add(employee);
+    }
+    return employees;
+  }
+
+}
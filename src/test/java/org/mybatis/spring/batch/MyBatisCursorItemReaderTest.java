@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.mybatis.spring.batch.domain.Employee;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * @version $Id$
+ */
+public final class MyBatisCursorItemReaderTest extends AbstractBatchDatabaseTest {
+
+  @Test
+  public void testReadsAllRows() throws Exception {
+    MyBatisCursorItemReader<Employee> reader = cursorReader();
+    reader.open(new ExecutionContext());
+    try {
+      for (int id = 1; id <= 4; id++) {
+        assertEquals(id, reader.read().getId());
+      }
+      assertNull(reader.read());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testRestartSkipsItemsRead() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    MyBatisCursorItemReader<Employee> reader = cursorReader();
+    reader.open(executionContext);
+    reader.read();
+    reader.read();
+    reader.update(executionContext);
+    reader.close();
+
+    assertEquals(2, executionContext.getInt("MyBatisCursorItemReader.read.count"));
+
+    reader = cursorReader();
+    reader.open(executionContext);
+    try {
+      assertEquals(3, reader.read().getId());
+      assertEquals(4, reader.read().getId());
+      assertNull(reader.read());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testCloseBeforeExhausted() throws Exception {
+    MyBatisCursorItemReader<Employee> reader = cursorReader();
+    reader.open(new ExecutionContext());
+    assertEquals(1, reader.read().getId());
+    reader.close();
+
+    // reopening runs the query again
+    reader.open(new ExecutionContext());
+    try {
+      assertEquals(1, reader.read().getId());
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static MyBatisCursorItemReader<Employee> cursorReader() throws Exception {
+    MyBatisCursorItemReader<Employee> reader = new MyBatisCursorItemReader<Employee>();
+    reader.setSqlSessionFactory(sqlSessionFactory);
+    reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeeOrderedById");
+    reader.afterPropertiesSet();
+    return reader;
+  }
+
+}
@@ -0,0 +1,266 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mybatis.spring.batch.domain.Employee;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.TaskExecutor;
+
+/**
+ * @version $Id$
+ */
+public final class MyBatisPagingItemReaderTest extends AbstractBatchDatabaseTest {
+
+  @Test
+  public void testKeysetReadsAllPages() throws Exception {
+    MyBatisPagingItemReader<Employee> reader = keysetReader();
+    reader.open(new ExecutionContext());
+
+    for (int id = 1; id <= 4; id++) {
+      assertEquals(id, reader.read().getId());
+    }
+    assertNull(reader.read());
+
+    reader.close();
+  }
+
+  @Test
+  public void testKeysetSavesLastKey() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    MyBatisPagingItemReader<Employee> reader = keysetReader();
+    reader.open(executionContext);
+    reader.read();
+    reader.read();
+    reader.update(executionContext);
+    reader.close();
+
+    Map<?, ?> lastKey = (Map<?, ?>) executionContext.get("MyBatisPagingItemReader.last.key");
+    assertEquals(2, lastKey.get("id"));
+  }
+
+  @Test
+  public void testKeysetRestart() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    MyBatisPagingItemReader<Employee> reader = keysetReader();
+    reader.open(executionContext);
+    reader.read();
+    reader.read();
+    reader.read();
+    reader.update(executionContext);
+    reader.close();
+
+    reader = keysetReader();
+    reader.open(executionContext);
+    assertEquals(4, reader.read().getId());
+    assertNull(reader.read());
+    reader.close();
+  }
+
+  @Test
+  public void testPrefetchByOffset() throws Exception {
+    CountingTaskExecutor taskExecutor = new CountingTaskExecutor();
+    MyBatisPagingItemReader<Employee> reader = new MyBatisPagingItemReader<Employee>();
+    reader.setSqlSessionFactory(sqlSessionFactory);
+    reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeePage");
+    reader.setPageSize(1);
+    reader.setPrefetchPages(2);
+    reader.setPrefetchTaskExecutor(taskExecutor);
+    reader.afterPropertiesSet();
+    reader.open(new ExecutionContext());
+
+    assertEquals(1, reader.read().getId());
+    assertEquals("pages 2 and 3 are read ahead", 2, taskExecutor.executions.get());
+    for (int id = 2; id <= 4; id++) {
+      assertEquals(id, reader.read().getId());
+    }
+    assertNull(reader.read());
+
+    reader.close();
+  }
+
+  @Test
+  public void testPrefetchByKeyset() throws Exception {
+    MyBatisPagingItemReader<Employee> reader = keysetReader();
+    reader.setPageSize(1);
+    reader.setPrefetchPages(3);
+    reader.afterPropertiesSet();
+    reader.open(new ExecutionContext());
+
+    for (int id = 1; id <= 4; id++) {
+      assertEquals(id, reader.read().getId());
+    }
+    assertNull(reader.read());
+
+    reader.close();
+  }
+
+  @Test
+  public void testPrefetchKeepsRestartState() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    MyBatisPagingItemReader<Employee> reader = keysetReader();
+    reader.setPrefetchPages(1);
+    reader.afterPropertiesSet();
+    reader.open(executionContext);
+    reader.read();
+    reader.update(executionContext);
+    reader.close();
+
+    assertEquals(1, executionContext.getInt("MyBatisPagingItemReader.read.count"));
+    assertEquals(1, ((Map<?, ?>) executionContext.get("MyBatisPagingItemReader.last.key")).get("id"));
+
+    reader = keysetReader();
+    reader.open(executionContext);
+    assertEquals(2, reader.read().getId());
+    reader.close();
+  }
+
+  @Test
+  public void testRestartFetchesOnlyUnreadRows() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    FetchCountingReader reader = offsetReader(true);
+    reader.open(executionContext);
+    reader.read();
+    reader.read();
+    reader.update(executionContext);
+    reader.close();
+    assertEquals(3, reader.rowsFetched);
+
+    reader = offsetReader(true);
+    reader.open(executionContext);
+    assertEquals(3, reader.read().getId());
+    assertEquals(4, reader.read().getId());
+    assertNull(reader.read());
+    reader.close();
+
+    assertEquals("rows 1 and 2 are not fetched again", 2, reader.rowsFetched);
+  }
+
+  @Test
+  public void testRestartAtPageBoundary() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    executionContext.putInt("MyBatisPagingItemReader.read.count", 3);
+
+    FetchCountingReader reader = offsetReader(true);
+    reader.open(executionContext);
+    assertEquals(4, reader.read().getId());
+    assertNull(reader.read());
+    reader.close();
+
+    assertEquals(1, reader.rowsFetched);
+  }
+
+  @Test
+  public void testRestartKeepsPageParameters() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    executionContext.putInt("MyBatisPagingItemReader.read.count", 2);
+
+    // this query computes its offset from _page and _pagesize
+    FetchCountingReader reader = new FetchCountingReader();
+    reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeePageNumber");
+    reader.afterPropertiesSet();
+    reader.open(executionContext);
+    assertEquals(3, reader.read().getId());
+    assertEquals(4, reader.read().getId());
+    assertNull(reader.read());
+    reader.close();
+
+    assertEquals("the restart page is fetched whole", 4, reader.rowsFetched);
+  }
+
+  @Test
+  public void testKeysetRestartFetchesOnlyUnreadRows() throws Exception {
+    ExecutionContext executionContext = new ExecutionContext();
+    FetchCountingReader reader = new FetchCountingReader();
+    reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeeAfterKey");
+    reader.setSortKeys(new String[] { "id" });
+    reader.afterPropertiesSet();
+    reader.open(executionContext);
+    reader.read();
+    reader.update(executionContext);
+    reader.close();
+
+    reader = new FetchCountingReader();
+    reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeeAfterKey");
+    reader.setSortKeys(new String[] { "id" });
+    reader.afterPropertiesSet();
+    reader.open(executionContext);
+    for (int id = 2; id <= 4; id++) {
+      assertEquals(id, reader.read().getId());
+    }
+    assertNull(reader.read());
+    reader.close();
+
+    assertEquals(3, reader.rowsFetched);
+  }
+
+  private static FetchCountingReader offsetReader(boolean skipReadRowsOnRestart) throws Exception {
+    FetchCountingReader reader = new FetchCountingReader();
+    reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeePage");
+    reader.setSkipReadRowsOnRestart(skipReadRowsOnRestart);
+    reader.afterPropertiesSet();
+    return reader;
+  }
+
+  private static MyBatisPagingItemReader<Employee> keysetReader() throws Exception {
+    MyBatisPagingItemReader<Employee> reader = new MyBatisPagingItemReader<Employee>();
+    reader.setSqlSessionFactory(sqlSessionFactory);
+    reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeeAfterKey");
+    reader.setPageSize(2);
+    reader.setSortKeys(new String[] { "id" });
+    reader.afterPropertiesSet();
+    return reader;
+  }
+
+  private static final class FetchCountingReader extends MyBatisPagingItemReader<Employee> {
+
+    private int rowsFetched;
+
+    FetchCountingReader() {
+      setSqlSessionFactory(sqlSessionFactory);
+      setPageSize(3);
+    }
+
+    @Override
+    protected void doReadPage() {
+      super.doReadPage();
+      for (Employee employee : results) {
+        if (employee != null) {
+          rowsFetched++;
+        }
+      }
+    }
+
+  }
+
+  private static final class CountingTaskExecutor implements TaskExecutor {
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    public void execute(Runnable task) {
+      executions.incrementAndGet();
+      task.run();
+    }
+
+  }
+
+}
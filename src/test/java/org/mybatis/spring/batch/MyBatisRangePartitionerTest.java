@@ -0,0 +1,174 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.batch.domain.Employee;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * @version $Id$
+ */
+public final class MyBatisRangePartitionerTest extends AbstractBatchDatabaseTest {
+
+  @Test
+  public void testSplitsRange() {
+    Map<String, ExecutionContext> partitions = partitioner("getEmployeeIdRange").partition(2);
+
+    assertEquals(2, partitions.size());
+    assertEquals(1L, partitions.get("partition0").getLong("minValue"));
+    assertEquals(2L, partitions.get("partition0").getLong("maxValue"));
+    assertEquals(3L, partitions.get("partition1").getLong("minValue"));
+    assertEquals(4L, partitions.get("partition1").getLong("maxValue"));
+  }
+
+  @Test
+  public void testNeverMorePartitionsThanKeys() {
+    Map<String, ExecutionContext> partitions = partitioner("getEmployeeIdRange").partition(10);
+
+    assertEquals(4, partitions.size());
+  }
+
+  @Test
+  public void testSplitsRangeEndingAtMaxLong() {
+    Map<String, ExecutionContext> partitions = longRangePartitioner(Long.MAX_VALUE - 10, Long.MAX_VALUE).partition(3);
+
+    assertEquals(3, partitions.size());
+    assertEquals(Long.MAX_VALUE - 2, partitions.get("partition2").getLong("minValue"));
+    assertEquals(Long.MAX_VALUE, partitions.get("partition2").getLong("maxValue"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRangeTooWideToSplitRejected() {
+    longRangePartitioner(Long.MIN_VALUE, Long.MAX_VALUE).partition(3);
+  }
+
+  @Test
+  public void testOnePartitionPerRow() {
+    MyBatisRangePartitioner partitioner = partitioner("getEmployeeIdBuckets");
+    partitioner.setSplitRange(false);
+    Map<String, ExecutionContext> partitions = partitioner.partition(2);
+
+    assertEquals(4, partitions.size());
+    assertEquals(3, partitions.get("partition2").get("minValue"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSeveralRowsRejectedWhenSplittingRange() {
+    partitioner("getEmployeeIdBuckets").partition(2);
+  }
+
+  @Test
+  public void testSingleRowIsOnePartitionWhenNotSplittingRange() {
+    MyBatisRangePartitioner partitioner = partitioner("getEmployeeIdRange");
+    partitioner.setSplitRange(false);
+    Map<String, ExecutionContext> partitions = partitioner.partition(2);
+
+    assertEquals(1, partitions.size());
+    assertEquals(1, partitions.get("partition0").get("minValue"));
+    assertEquals(4, partitions.get("partition0").get("maxValue"));
+  }
+
+  @Test
+  public void testNonSerializableKeysRejected() {
+    MyBatisRangePartitioner partitioner = new MyBatisRangePartitioner();
+    partitioner.setSqlSessionTemplate(new SqlSessionTemplate(sqlSessionFactory) {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <E> List<E> selectList(String statement, Object parameter) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("min", new Object());
+        row.put("max", new Object());
+        return (List<E>) Collections.singletonList(row);
+      }
+    });
+    partitioner.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeeIdBuckets");
+    partitioner.setSplitRange(false);
+    partitioner.afterPropertiesSet();
+
+    try {
+      partitioner.partition(2);
+      fail("should reject keys that can not be stored in an ExecutionContext");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("must be Serializable"));
+    }
+  }
+
+  @Test
+  public void testNoPartitionsWithoutKeys() {
+    MyBatisRangePartitioner partitioner = partitioner("getEmployeeIdRangeAbove");
+    Map<String, Object> parameterValues = new HashMap<String, Object>();
+    parameterValues.put("above", 100);
+    partitioner.setParameterValues(parameterValues);
+
+    assertEquals(0, partitioner.partition(3).size());
+  }
+
+  @Test
+  public void testReadersConsumeTheirSlice() throws Exception {
+    List<Integer> ids = new ArrayList<Integer>();
+    for (ExecutionContext partition : partitioner("getEmployeeIdRange").partition(3).values()) {
+      Map<String, Object> parameterValues = new HashMap<String, Object>();
+      parameterValues.put("minValue", partition.get("minValue"));
+      parameterValues.put("maxValue", partition.get("maxValue"));
+
+      MyBatisPagingItemReader<Employee> reader = new MyBatisPagingItemReader<Employee>();
+      reader.setSqlSessionFactory(sqlSessionFactory);
+      reader.setQueryId("org.mybatis.spring.batch.dao.UserDao.getEmployeeInRange");
+      reader.setParameterValues(parameterValues);
+      reader.setPageSize(1);
+      reader.afterPropertiesSet();
+      reader.open(new ExecutionContext());
+      for (Employee employee = reader.read(); employee != null; employee = reader.read()) {
+        assertTrue(employee.getId() >= partition.getLong("minValue"));
+        assertTrue(employee.getId() <= partition.getLong("maxValue"));
+        ids.add(employee.getId());
+      }
+      reader.close();
+    }
+
+    assertEquals(4, ids.size());
+  }
+
+  private static MyBatisRangePartitioner longRangePartitioner(long min, long max) {
+    MyBatisRangePartitioner partitioner = partitioner("getLongIdRange");
+    Map<String, Object> parameterValues = new HashMap<String, Object>();
+    parameterValues.put("min", min);
+    parameterValues.put("max", max);
+    partitioner.setParameterValues(parameterValues);
+    return partitioner;
+  }
+
+  private static MyBatisRangePartitioner partitioner(String queryId) {
+    MyBatisRangePartitioner partitioner = new MyBatisRangePartitioner();
+    partitioner.setSqlSessionFactory(sqlSessionFactory);
+    partitioner.setQueryId("org.mybatis.spring.batch.dao.UserDao." + queryId);
+    partitioner.afterPropertiesSet();
+    return partitioner;
+  }
+
+}
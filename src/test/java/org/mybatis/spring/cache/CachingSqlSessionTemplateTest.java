@@ -0,0 +1,241 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.session.RowBounds;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.AbstractEmbeddedDatabaseTest;
+import org.mybatis.spring.Employee;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * @version $Id$
+ */
+public final class CachingSqlSessionTemplateTest extends AbstractEmbeddedDatabaseTest {
+
+  private static final String GET = "org.mybatis.spring.EmployeeMapper.getEmployee";
+
+  private static final String CHECK = "org.mybatis.spring.EmployeeMapper.check";
+
+  private static final String UPDATE = "org.mybatis.spring.EmployeeMapper.updateEmployee";
+
+  private static final String RAISE_ALL = "org.mybatis.spring.cache.PayrollMapper.raiseAll";
+
+  private static final String GET_SALARY = "org.mybatis.spring.cache.PayrollMapper.getSalary";
+
+  private static SqlSessionTemplate sqlSessionTemplate;
+
+  private CachingSqlSessionTemplate sqlSession;
+
+  @BeforeClass
+  public static void setupTemplate() throws Exception {
+    sqlSessionTemplate = new SqlSessionTemplate(
+        createSqlSessionFactory(dataSource, EMPLOYEE_MAPPER, "org/mybatis/spring/cache/PayrollMapper.xml"));
+  }
+
+  @Before
+  public void setupSqlSession() {
+    sqlSession = new CachingSqlSessionTemplate(sqlSessionTemplate);
+    sqlSession.setCachedStatements(Arrays.asList(new CachedStatement(CHECK)));
+  }
+
+  @After
+  public void resetDatabase() {
+    new JdbcTemplate(dataSource).update("update employees set salary = id * 1000");
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    assertEquals(10000, sqlSession.selectOne(CHECK));
+    assertEquals(10000, sqlSession.selectOne(CHECK));
+    sqlSession.selectList(CHECK);
+
+    assertEquals(1, sqlSession.getHitCount());
+    assertEquals(2, sqlSession.getMissCount());
+    assertEquals(1, sqlSession.getHitCount(CHECK));
+  }
+
+  @Test
+  public void testWriteInvalidatesOwnNamespace() {
+    assertEquals(10000, sqlSession.selectOne(CHECK));
+
+    sqlSession.update(UPDATE, employee(1, 2000));
+
+    assertEquals(11000, sqlSession.selectOne(CHECK));
+    assertEquals(0, sqlSession.getHitCount());
+  }
+
+  @Test
+  public void testInvalidationRule() {
+    assertEquals(10000, sqlSession.selectOne(CHECK));
+    sqlSession.update(RAISE_ALL, 1);
+    assertEquals("stale without rule", 10000, sqlSession.selectOne(CHECK));
+
+    sqlSession.setInvalidationRules(Collections.singletonMap(RAISE_ALL,
+        new String[] { "org.mybatis.spring.EmployeeMapper" }));
+    sqlSession.update(RAISE_ALL, 1);
+
+    assertEquals(10008, sqlSession.selectOne(CHECK));
+  }
+
+  @Test
+  public void testInvalidationAfterCommit() throws Exception {
+    assertEquals(10000, sqlSession.selectOne(CHECK));
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSession.update(UPDATE, employee(1, 2000));
+      // the transaction bypasses the cache of what it wrote
+      assertEquals(11000, sqlSession.selectOne(CHECK));
+    } catch (RuntimeException e) {
+      txManager.rollback(status);
+      throw e;
+    }
+    // other threads keep reading the committed data from the cache
+    assertEquals(10000, selectOneOutsideTx(CHECK));
+
+    txManager.commit(status);
+
+    assertEquals(11000, selectOneOutsideTx(CHECK));
+    assertEquals(1, sqlSession.getHitCount());
+  }
+
+  @Test
+  public void testNoInvalidationAfterRollback() {
+    assertEquals(10000, sqlSession.selectOne(CHECK));
+
+    TransactionStatus status = txManager.getTransaction(new DefaultTransactionDefinition());
+    try {
+      sqlSession.update(UPDATE, employee(1, 2000));
+    } finally {
+      txManager.rollback(status);
+    }
+
+    assertEquals(10000, sqlSession.selectOne(CHECK));
+    assertEquals(1, sqlSession.getHitCount());
+  }
+
+  @Test
+  public void testKeyedOnBoundParameterValues() {
+    sqlSession.setCachedStatements(Arrays.asList(new CachedStatement(GET_SALARY)));
+
+    // Employee does not implement equals()
+    assertEquals(1000, sqlSession.selectOne(GET_SALARY, employee(1, 0)));
+    assertEquals(1000, sqlSession.selectOne(GET_SALARY, employee(1, 0)));
+
+    assertEquals(1, sqlSession.getHitCount());
+    assertEquals(1, sqlSession.getMissCount());
+  }
+
+  @Test
+  public void testReusedParameterDoesNotChangeCachedKey() {
+    sqlSession.setCachedStatements(Arrays.asList(new CachedStatement(GET_SALARY)));
+
+    Employee employee = employee(1, 0);
+    assertEquals(1000, sqlSession.selectOne(GET_SALARY, employee));
+    employee.setId(2);
+    assertEquals(2000, sqlSession.selectOne(GET_SALARY, employee));
+    assertEquals(1000, sqlSession.selectOne(GET_SALARY, employee(1, 0)));
+
+    assertEquals(1, sqlSession.getHitCount());
+    assertEquals(2, sqlSession.getMissCount());
+  }
+
+  @Test
+  public void testLruEviction() {
+    CachedStatement cachedStatement = new CachedStatement(GET);
+    cachedStatement.setMaxEntries(2);
+    sqlSession.setCachedStatements(Arrays.asList(cachedStatement));
+
+    List<Employee> first = sqlSession.selectList(GET, null, new RowBounds(0, 1));
+    sqlSession.selectList(GET, null, new RowBounds(1, 1));
+    assertSame(first, sqlSession.selectList(GET, null, new RowBounds(0, 1)));
+    sqlSession.selectList(GET, null, new RowBounds(2, 1));
+
+    // the second page was the least recently used
+    assertSame(first, sqlSession.selectList(GET, null, new RowBounds(0, 1)));
+    sqlSession.selectList(GET, null, new RowBounds(1, 1));
+    assertEquals(2, sqlSession.getHitCount());
+    assertEquals(4, sqlSession.getMissCount());
+  }
+
+  @Test
+  public void testLfuEviction() {
+    CachedStatement cachedStatement = new CachedStatement(GET);
+    cachedStatement.setMaxEntries(2);
+    cachedStatement.setEvictionPolicy(EvictionPolicy.LFU);
+    sqlSession.setCachedStatements(Arrays.asList(cachedStatement));
+
+    sqlSession.selectList(GET, null, new RowBounds(0, 1));
+    sqlSession.selectList(GET, null, new RowBounds(1, 1));
+    sqlSession.selectList(GET, null, new RowBounds(1, 1));
+    sqlSession.selectList(GET, null, new RowBounds(2, 1));
+
+    // the first page was the least frequently used
+    sqlSession.selectList(GET, null, new RowBounds(1, 1));
+    sqlSession.selectList(GET, null, new RowBounds(0, 1));
+    assertEquals(2, sqlSession.getHitCount());
+    assertEquals(4, sqlSession.getMissCount());
+  }
+
+  @Test
+  public void testTimeToLive() throws Exception {
+    CachedStatement cachedStatement = new CachedStatement(CHECK);
+    cachedStatement.setTimeToLive(50);
+    sqlSession.setCachedStatements(Arrays.asList(cachedStatement));
+
+    sqlSession.selectOne(CHECK);
+    Thread.sleep(100);
+    sqlSession.selectOne(CHECK);
+
+    assertEquals(0, sqlSession.getHitCount());
+    assertEquals(2, sqlSession.getMissCount());
+  }
+
+  private Object selectOneOutsideTx(final String statement) throws InterruptedException {
+    final Object[] result = new Object[1];
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        result[0] = sqlSession.selectOne(statement);
+      }
+    };
+    reader.start();
+    reader.join();
+    return result[0];
+  }
+
+  private static Employee employee(int id, int salary) {
+    Employee employee = new Employee();
+    employee.setId(id);
+    employee.setSalary(salary);
+    return employee;
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @version $Id$
+ */
+public final class LatencyHistogramTest {
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(0.99));
+    assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000, histogram.getMax());
+    assertWithin(500, histogram.getPercentile(0.5));
+    assertWithin(990, histogram.getPercentile(0.99));
+  }
+
+  @Test
+  public void testBucketBounds() {
+    for (long value : new long[] { 0, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE }) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(value + " above its bucket bound", value <= LatencyHistogram.upperBoundOf(bucket));
+      if (bucket > 0) {
+        assertTrue(value + " within the previous bucket", value > LatencyHistogram.upperBoundOf(bucket - 1));
+      }
+    }
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("expected about " + expected + " but was " + actual,
+        actual >= expected && actual <= expected * 1.125);
+  }
+
+}
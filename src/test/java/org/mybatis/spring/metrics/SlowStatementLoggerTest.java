@@ -0,0 +1,179 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.AbstractEmbeddedDatabaseTest;
+import org.mybatis.spring.Employee;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.StatementExecutionListener;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import com.mockrunner.mock.jdbc.MockConnection;
+import com.mockrunner.mock.jdbc.MockDataSource;
+import com.mockrunner.mock.jdbc.MockPreparedStatement;
+import com.mockrunner.mock.jdbc.MockResultSet;
+
+/**
+ * @version $Id$
+ */
+public final class SlowStatementLoggerTest extends AbstractEmbeddedDatabaseTest {
+
+  private static final String GET = "org.mybatis.spring.EmployeeMapper.getEmployee";
+
+  private static final String UPDATE = "org.mybatis.spring.EmployeeMapper.updateEmployee";
+
+  private static SqlSessionTemplate sqlSessionTemplate;
+
+  private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+  private SlowStatementLogger slowStatementLogger;
+
+  @BeforeClass
+  public static void setupTemplate() {
+    sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+  }
+
+  @Before
+  public void setupLogger() {
+    slowStatementLogger = new SlowStatementLogger() {
+      @Override
+      protected void log(String message) {
+        messages.add(message);
+      }
+    };
+    slowStatementLogger.setThresholdMillis(0);
+    slowStatementLogger.setExplainTaskExecutor(new SyncTaskExecutor());
+    sqlSessionTemplate.setStatementExecutionListeners(Arrays.<StatementExecutionListener> asList(slowStatementLogger));
+  }
+
+  @Test
+  public void testBelowThreshold() {
+    slowStatementLogger.setThresholdMillis(60000);
+
+    sqlSessionTemplate.selectList(GET);
+
+    assertEquals(0, messages.size());
+    assertEquals(0, slowStatementLogger.getSlowStatementCount());
+  }
+
+  @Test
+  public void testSqlAndMaskedParameters() {
+    slowStatementLogger.setMaskedParameters(Arrays.asList("sal.*"));
+
+    sqlSessionTemplate.update(UPDATE, employee(1, 1000));
+
+    assertEquals(1, messages.size());
+    String message = messages.get(0);
+    assertTrue(message, message.startsWith("Slow statement [" + UPDATE + "] took "));
+    assertTrue(message, message.contains("SQL: update employees set salary=? where id=?"));
+    assertTrue(message, message.contains("Parameters: [salary=****, id=1]"));
+  }
+
+  @Test
+  public void testExplainPlan() {
+    slowStatementLogger.setExplainPrefix("EXPLAIN PLAN FOR ");
+
+    sqlSessionTemplate.update(UPDATE, employee(1, 1000));
+
+    assertEquals(2, messages.size());
+    String plan = messages.get(1);
+    assertTrue(plan, plan.startsWith("Plan of slow statement [" + UPDATE + "]:"));
+    assertTrue(plan, plan.contains("EMPLOYEES"));
+  }
+
+  @Test
+  public void testExplainBindsParameters() {
+    MockConnection connection = new MockConnection();
+    MockResultSet plan = new MockResultSet("plan");
+    plan.addColumn("PLAN", new Object[] { "full scan" });
+    connection.getPreparedStatementResultSetHandler().prepareGlobalResultSet(plan);
+    MockDataSource explainDataSource = new MockDataSource();
+    explainDataSource.setupConnection(connection);
+    slowStatementLogger.setExplainDataSource(explainDataSource);
+    slowStatementLogger.setExplainPrefix("EXPLAIN ");
+
+    sqlSessionTemplate.update(UPDATE, employee(1, 1000));
+
+    List<?> statements = connection.getPreparedStatementResultSetHandler().getPreparedStatements();
+    assertEquals(1, statements.size());
+    MockPreparedStatement ps = (MockPreparedStatement) statements.get(0);
+    assertEquals("EXPLAIN update employees set salary=? where id=?", ps.getSQL().replaceAll("\\s+", " ").trim());
+    assertEquals(1000, ps.getParameter(1));
+    assertEquals(1, ps.getParameter(2));
+    assertEquals(2, messages.size());
+    assertTrue(messages.get(1), messages.get(1).contains("full scan"));
+  }
+
+  @Test
+  public void testExplainInBackgroundByDefault() throws Exception {
+    final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+    final CountDownLatch planLogged = new CountDownLatch(1);
+    slowStatementLogger = new SlowStatementLogger() {
+      @Override
+      protected void log(String message) {
+        messages.add(message);
+        threads.add(Thread.currentThread());
+        if (message.startsWith("Plan of")) {
+          planLogged.countDown();
+        }
+      }
+    };
+    slowStatementLogger.setThresholdMillis(0);
+    slowStatementLogger.setExplainPrefix("EXPLAIN PLAN FOR ");
+    sqlSessionTemplate.setStatementExecutionListeners(Arrays.<StatementExecutionListener> asList(slowStatementLogger));
+
+    sqlSessionTemplate.update(UPDATE, employee(1, 1000));
+
+    assertTrue(planLogged.await(5, TimeUnit.SECONDS));
+    assertEquals(Thread.currentThread(), threads.get(0));
+    assertFalse("plan should be read by another thread", Thread.currentThread() == threads.get(1));
+  }
+
+  @Test
+  public void testExplainRateLimit() {
+    slowStatementLogger.setExplainPrefix("EXPLAIN PLAN FOR ");
+    slowStatementLogger.setMaxExplainsPerMinute(1);
+
+    sqlSessionTemplate.selectList(GET);
+    sqlSessionTemplate.selectList(GET);
+    sqlSessionTemplate.selectList(GET);
+
+    assertEquals(3, slowStatementLogger.getSlowStatementCount());
+    assertEquals("three reports and one plan", 4, messages.size());
+  }
+
+  private static Employee employee(int id, int salary) {
+    Employee employee = new Employee();
+    employee.setId(id);
+    employee.setSalary(salary);
+    return employee;
+  }
+
+}
@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.spring.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mybatis.spring.AbstractEmbeddedDatabaseTest;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.StatementExecutionListener;
+import org.springframework.dao.DataAccessException;
+
+/**
+ * @version $Id$
+ */
+public final class StatementMetricsListenerTest extends AbstractEmbeddedDatabaseTest {
+
+  private static final String GET = "org.mybatis.spring.EmployeeMapper.getEmployee";
+
+  private static final String UPDATE = "org.mybatis.spring.EmployeeMapper.updateEmployee";
+
+  private static SqlSessionTemplate sqlSessionTemplate;
+
+  private StatementMetricsListener listener;
+
+  @BeforeClass
+  public static void setupTemplate() {
+    sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+  }
+
+  @Before
+  public void setupListener() {
+    listener = new StatementMetricsListener();
+    sqlSessionTemplate.setStatementExecutionListeners(Arrays.<StatementExecutionListener> asList(listener));
+  }
+
+  @Test
+  public void testCallsAndRows() {
+    sqlSessionTemplate.selectList(GET);
+    sqlSessionTemplate.selectList(GET);
+    sqlSessionTemplate.update(UPDATE);
+
+    StatementMetrics metrics = listener.getMetrics(GET, "selectList");
+    assertEquals(2, metrics.getCallCount());
+    assertEquals(8, metrics.getRowCount());
+    assertEquals(0, metrics.getErrorCount());
+    assertTrue(metrics.getMax() >= metrics.getP99());
+    assertTrue(metrics.getP99() >= metrics.getP50());
+
+    assertEquals(1, listener.getCallCount(UPDATE, "update"));
+    assertEquals(0, listener.getCallCount(GET, "selectOne"));
+  }
+
+  @Test
+  public void testErrors() {
+    try {
+      sqlSessionTemplate.selectOne(GET);
+      fail("exception not thrown when expected");
+    } catch (DataAccessException e) {
+      // success, too many results
+    }
+
+    assertEquals(1, listener.getCallCount(GET, "selectOne"));
+    assertEquals(1, listener.getErrorCount(GET, "selectOne"));
+  }
+
+  @Test
+  public void testJmx() throws Exception {
+    sqlSessionTemplate.selectList(GET);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.mybatis:type=StatementMetrics,name=statementMetricsListenerTest");
+    server.registerMBean(listener, name);
+    try {
+      String[] lines = (String[]) server.getAttribute(name, "StatementMetrics");
+      assertEquals(1, lines.length);
+      assertTrue(lines[0].startsWith(GET + " selectList calls=1 errors=0 rows=4"));
+
+      server.invoke(name, "reset", null, null);
+      assertEquals(0, listener.getCallCount(GET, "selectList"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+}